@@ -0,0 +1,69 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static no.nordicsemi.android.support.v18.scanner.TestScanResults.result;
+
+@RunWith(AndroidJUnit4.class)
+public class DeviceRegistryTest {
+	private static final long SECOND = 1000000000L;
+
+	@Test
+	public void testToLong() {
+		assertThat(DeviceRegistry.toLong("01:23:45:67:89:AB")).isEqualTo(0x0123456789ABL);
+		assertThat(DeviceRegistry.toLong("FF:FF:FF:FF:FF:FF")).isEqualTo(0xFFFFFFFFFFFFL);
+	}
+
+	@Test
+	public void testRecord() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		registry.enable();
+		final ScanResult result = result("01:02:03:04:05:06", -60, SECOND);
+		registry.record(result);
+		// The same packet received by another scan is ignored.
+		registry.record(result);
+		registry.record(result("01:02:03:04:05:06", -40, 2 * SECOND));
+		registry.record(result("01:02:03:04:05:07", -70, 3 * SECOND));
+
+		final ScannedDevice device = registry.getDevice("01:02:03:04:05:06", 3 * SECOND);
+		assertThat(device).isNotNull();
+		assertThat(device.getPacketCount()).isEqualTo(2);
+		assertThat(device.getRssi()).isEqualTo(-40);
+		assertThat(device.getRssiMean()).isEqualTo(-50f);
+		assertThat(device.getRssiMin()).isEqualTo(-60);
+		assertThat(device.getRssiMax()).isEqualTo(-40);
+
+		final List<ScannedDevice> devices = registry.getDevicesInRange(3 * SECOND);
+		assertThat(devices).hasSize(2);
+		assertThat(devices.get(0).getDevice().getAddress()).isEqualTo("01:02:03:04:05:07");
+	}
+
+	@Test
+	public void testLostDevicesAreRemoved() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		registry.enable();
+		registry.record(result("01:02:03:04:05:06", -60, SECOND));
+		registry.record(result("01:02:03:04:05:07", -60, 5 * SECOND));
+
+		final List<ScannedDevice> devices = registry.getDevicesInRange(12 * SECOND);
+		assertThat(devices).hasSize(1);
+		assertThat(registry.getDevice("01:02:03:04:05:06", 12 * SECOND)).isNull();
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		registry.record(result("01:02:03:04:05:06", -60, SECOND));
+		assertThat(registry.getDevicesInRange(SECOND)).isEmpty();
+
+		registry.enable();
+		registry.record(result("01:02:03:04:05:06", -60, 2 * SECOND));
+		assertThat(registry.getDevicesInRange(2 * SECOND)).hasSize(1);
+	}
+}
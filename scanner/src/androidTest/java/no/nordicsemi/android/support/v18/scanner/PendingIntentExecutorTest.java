@@ -0,0 +1,160 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class PendingIntentExecutorTest {
+	private static final String ACTION = "no.nordicsemi.android.support.v18.scanner.test.ACTION_RESULTS";
+
+	private final BlockingQueue<Intent> intents = new LinkedBlockingQueue<>();
+	private final BroadcastReceiver receiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			intents.add(intent);
+		}
+	};
+	private Context context;
+	private PendingIntent callbackIntent;
+
+	@Before
+	public void setUp() {
+		context = ApplicationProvider.getApplicationContext();
+		context.registerReceiver(receiver, new IntentFilter(ACTION));
+
+		final Intent intent = new Intent(ACTION).setPackage(context.getPackageName());
+		int flags = PendingIntent.FLAG_UPDATE_CURRENT;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S)
+			flags |= PendingIntent.FLAG_MUTABLE;
+		callbackIntent = PendingIntent.getBroadcast(context, 0, intent, flags);
+	}
+
+	@After
+	public void tearDown() {
+		context.unregisterReceiver(receiver);
+		callbackIntent.cancel();
+	}
+
+	@Test
+	public void testCoalesceByCount() throws InterruptedException {
+		final PendingIntentExecutor executor = executor(3, 100000, 60000);
+
+		send(executor, "01:02:03:04:05:01");
+		send(executor, "01:02:03:04:05:02");
+		assertNothingReceived();
+
+		send(executor, "01:02:03:04:05:03");
+		assertThat(receive()).hasSize(3);
+	}
+
+	@Test
+	public void testCoalesceBySize() throws InterruptedException {
+		// A result without a scan record is estimated at 100 bytes.
+		final PendingIntentExecutor executor = executor(100, 250, 60000);
+
+		send(executor, "01:02:03:04:05:01");
+		send(executor, "01:02:03:04:05:02");
+		assertNothingReceived();
+
+		// Pending results are sent before a result that would exceed the limit.
+		send(executor, "01:02:03:04:05:03");
+		assertThat(receive()).hasSize(2);
+		executor.flushPendingResults();
+		assertThat(receive()).hasSize(1);
+	}
+
+	@Test
+	public void testCoalesceByLatency() throws InterruptedException {
+		final PendingIntentExecutor executor = executor(100, 100000, 300);
+
+		send(executor, "01:02:03:04:05:01");
+		send(executor, "01:02:03:04:05:02");
+
+		assertThat(receive()).hasSize(2);
+	}
+
+	@Test
+	public void testFlush() throws InterruptedException {
+		final PendingIntentExecutor executor = executor(100, 100000, 60000);
+
+		send(executor, "01:02:03:04:05:01");
+		send(executor, "01:02:03:04:05:02");
+		// Called when the scan is stopped.
+		executor.flushPendingResults();
+		assertThat(receive()).hasSize(2);
+
+		executor.flushPendingResults();
+		assertNothingReceived();
+	}
+
+	@Test
+	public void testOrderKept() throws InterruptedException {
+		final PendingIntentExecutor executor = executor(100, 100000, 60000);
+
+		send(executor, "01:02:03:04:05:01");
+		executor.onScanResult(ScanSettings.CALLBACK_TYPE_FIRST_MATCH,
+				TestScanResults.result("01:02:03:04:05:02", -60, 0));
+
+		// Pending results are sent before results of other callback types.
+		final Intent first = intents.poll(2, TimeUnit.SECONDS);
+		assertThat(first).isNotNull();
+		assertThat(first.getIntExtra(BluetoothLeScannerCompat.EXTRA_CALLBACK_TYPE, 0))
+				.isEqualTo(ScanSettings.CALLBACK_TYPE_ALL_MATCHES);
+		final Intent second = intents.poll(2, TimeUnit.SECONDS);
+		assertThat(second).isNotNull();
+		assertThat(second.getIntExtra(BluetoothLeScannerCompat.EXTRA_CALLBACK_TYPE, 0))
+				.isEqualTo(ScanSettings.CALLBACK_TYPE_FIRST_MATCH);
+	}
+
+	@NonNull
+	private PendingIntentExecutor executor(final int maxResults, final int maxBytes,
+										   final long maxLatencyMillis) {
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setPendingIntentCoalescing(maxResults, maxBytes, maxLatencyMillis)
+				.build();
+		final PendingIntentExecutor executor = new PendingIntentExecutor(callbackIntent, settings);
+		executor.setTemporaryContext(context);
+		return executor;
+	}
+
+	private static void send(@NonNull final PendingIntentExecutor executor,
+							 @NonNull final String address) {
+		executor.onScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(address, -60, 0));
+	}
+
+	@NonNull
+	private ArrayList<ScanResult> receive() throws InterruptedException {
+		final Intent intent = intents.poll(2, TimeUnit.SECONDS);
+		assertThat(intent).isNotNull();
+		intent.setExtrasClassLoader(ScanResult.class.getClassLoader());
+		final ArrayList<ScanResult> results =
+				intent.getParcelableArrayListExtra(BluetoothLeScannerCompat.EXTRA_LIST_SCAN_RESULT);
+		assertThat(results).isNotNull();
+		return results;
+	}
+
+	private void assertNothingReceived() throws InterruptedException {
+		assertThat(intents.poll(200, TimeUnit.MILLISECONDS)).isNull();
+	}
+}
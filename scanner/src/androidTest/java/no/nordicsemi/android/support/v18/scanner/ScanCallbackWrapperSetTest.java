@@ -0,0 +1,72 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ScanCallbackWrapperSetTest {
+
+	private static BluetoothLeScannerCompat.ScanCallbackWrapper wrapper(final ScanCallback callback) {
+		return new BluetoothLeScannerCompat.ScanCallbackWrapper(false, false,
+				Collections.emptyList(), new ScanSettings.Builder().build(),
+				new UserScanCallbackWrapper(callback), ScanCallbackScheduler.of(Runnable::run));
+	}
+
+	@Test
+	public void testGetByUserCallback() {
+		final ScanCallback callback = new ScanCallback() {};
+		final ScanCallback other = new ScanCallback() {};
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(callback);
+		final ScanCallbackWrapperSet<BluetoothLeScannerCompat.ScanCallbackWrapper> set = new ScanCallbackWrapperSet<>();
+		set.add(wrapper);
+
+		assertThat(set.contains(callback)).isTrue();
+		assertThat(set.get(callback)).isSameInstanceAs(wrapper);
+		// The wrapper can also be found by the callback it delivers to.
+		assertThat(set.get(wrapper.scanCallback)).isSameInstanceAs(wrapper);
+		assertThat(set.contains(other)).isFalse();
+		assertThat(set.values()).containsExactly(wrapper);
+	}
+
+	@Test
+	public void testRemove() {
+		final ScanCallback callback = new ScanCallback() {};
+		final ScanCallbackWrapperSet<BluetoothLeScannerCompat.ScanCallbackWrapper> set = new ScanCallbackWrapperSet<>();
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(callback);
+		set.add(wrapper);
+
+		assertThat(set.remove(new ScanCallback() {})).isNull();
+		assertThat(set.remove(callback)).isSameInstanceAs(wrapper);
+		assertThat(set.isEmpty()).isTrue();
+		assertThat(set.get(callback)).isNull();
+		assertThat(set.get(wrapper.scanCallback)).isNull();
+	}
+
+	@Test
+	public void testRestartByWrapper() {
+		final ScanCallback callback = new ScanCallback() {};
+		final ScanCallbackWrapperSet<BluetoothLeScannerCompat.ScanCallbackWrapper> set = new ScanCallbackWrapperSet<>();
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(callback);
+		set.add(wrapper);
+
+		// A scan restarted from the wrapper is stopped by the callback it delivers to,
+		// and registered again with the user callback.
+		assertThat(set.remove(wrapper.scanCallback)).isSameInstanceAs(wrapper);
+		final ScanCallback userCallback = ((UserScanCallbackWrapper) wrapper.scanCallback).get();
+		assertThat(userCallback).isSameInstanceAs(callback);
+		final BluetoothLeScannerCompat.ScanCallbackWrapper restarted = wrapper(userCallback);
+		set.add(restarted);
+
+		// The user can still stop the scan.
+		assertThat(set.get(callback)).isSameInstanceAs(restarted);
+		assertThat(set.remove(callback)).isSameInstanceAs(restarted);
+		assertThat(set.isEmpty()).isTrue();
+		assertThat(set.purge()).isEmpty();
+	}
+}
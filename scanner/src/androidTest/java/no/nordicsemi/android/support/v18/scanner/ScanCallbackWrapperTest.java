@@ -0,0 +1,146 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+public class ScanCallbackWrapperTest {
+	private static final long MILLIS = 1000000L;
+	private static final String ADDRESS_A = "01:02:03:04:05:06";
+	private static final String ADDRESS_B = "01:02:03:04:05:07";
+
+	private final RecordingCallback callback = new RecordingCallback();
+
+	@NonNull
+	private BluetoothLeScannerCompat.ScanCallbackWrapper wrapper(@NonNull final ScanSettings settings) {
+		return new BluetoothLeScannerCompat.ScanCallbackWrapper(false, false,
+				Collections.emptyList(), settings, callback, ScanCallbackScheduler.of(Runnable::run));
+	}
+
+	@Test
+	public void testThrottleAggregation() {
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(new ScanSettings.Builder()
+				.setDeviceReportInterval(1000)
+				.build());
+
+		final ScanResult first = TestScanResults.result(ADDRESS_A, -60, 0);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, first);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -50, 200 * MILLIS));
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -70, 500 * MILLIS));
+		// Other devices are reported independently.
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_B, -80, 600 * MILLIS));
+		assertThat(callback.results).hasSize(2);
+		assertThat(callback.results.get(0)).isSameInstanceAs(first);
+		assertThat(callback.results.get(0).getRssiCount()).isEqualTo(1);
+
+		// The next report contains all packets received since the last one.
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -60, 1000 * MILLIS));
+		assertThat(callback.results).hasSize(3);
+		final ScanResult report = callback.results.get(2);
+		assertThat(report.getRssi()).isEqualTo(-60);
+		assertThat(report.getTimestampNanos()).isEqualTo(1000 * MILLIS);
+		assertThat(report.getRssiCount()).isEqualTo(3);
+		assertThat(report.getRssiMean()).isEqualTo(-60f);
+		assertThat(report.getRssiMax()).isEqualTo(-50);
+		wrapper.close();
+	}
+
+	@Test
+	public void testPayloadChange() {
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(new ScanSettings.Builder()
+				.setReportOnPayloadChangeOnly(true, 10)
+				.build());
+		final byte[] payload = { 2, 1, 6 };
+		final byte[] otherPayload = { 2, 1, 4 };
+
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -60, payload, 0));
+		// The same payload with RSSI changed by less than the threshold is not reported.
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -65, payload.clone(), 100 * MILLIS));
+		assertThat(callback.results).hasSize(1);
+
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -65, otherPayload, 200 * MILLIS));
+		assertThat(callback.results).hasSize(2);
+
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -75, otherPayload, 300 * MILLIS));
+		assertThat(callback.results).hasSize(3);
+		wrapper.close();
+	}
+
+	@Test
+	public void testBatchPolicyKeepStrongest() {
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(new ScanSettings.Builder()
+				.setReportDelay(60000)
+				.setBatchPolicy(ScanSettings.BATCH_POLICY_KEEP_STRONGEST)
+				.build());
+
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -70, 0));
+		final ScanResult strongest = TestScanResults.result(ADDRESS_A, -50, 100 * MILLIS);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, strongest);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -60, 200 * MILLIS));
+		final ScanResult other = TestScanResults.result(ADDRESS_B, -80, 300 * MILLIS);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, other);
+		wrapper.flushPendingScanResults();
+
+		assertThat(callback.batches).hasSize(1);
+		assertThat(callback.batches.get(0)).containsExactly(strongest, other).inOrder();
+		wrapper.close();
+	}
+
+	@Test
+	public void testBatchPolicyKeepLatest() {
+		final BluetoothLeScannerCompat.ScanCallbackWrapper wrapper = wrapper(new ScanSettings.Builder()
+				.setReportDelay(60000)
+				.setBatchPolicy(ScanSettings.BATCH_POLICY_KEEP_LATEST)
+				.build());
+
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES,
+				TestScanResults.result(ADDRESS_A, -70, 0));
+		final ScanResult latest = TestScanResults.result(ADDRESS_A, -80, 100 * MILLIS);
+		wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, latest);
+		wrapper.flushPendingScanResults();
+		// The next batch is empty.
+		wrapper.flushPendingScanResults();
+
+		assertThat(callback.batches).hasSize(2);
+		assertThat(callback.batches.get(0)).containsExactly(latest);
+		assertThat(callback.batches.get(1)).isEmpty();
+		wrapper.close();
+	}
+
+	/**
+	 * A callback that records all results. Batches are copied, as they may be recycled.
+	 */
+	private static final class RecordingCallback extends ScanCallback {
+		private final List<ScanResult> results = new ArrayList<>();
+		private final List<List<ScanResult>> batches = new ArrayList<>();
+
+		@Override
+		public void onScanResult(final int callbackType, @NonNull final ScanResult result) {
+			results.add(result);
+		}
+
+		@Override
+		public void onBatchScanResults(@NonNull final List<ScanResult> results) {
+			batches.add(new ArrayList<>(results));
+		}
+	}
+}
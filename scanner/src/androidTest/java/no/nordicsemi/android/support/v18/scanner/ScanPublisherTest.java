@@ -0,0 +1,228 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.os.Build;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SdkSuppress;
+
+import static com.google.common.truth.Truth.assertThat;
+
+@RunWith(AndroidJUnit4.class)
+@SdkSuppress(minSdkVersion = Build.VERSION_CODES.R)
+public class ScanPublisherTest {
+	private final FakeScanner scanner = new FakeScanner();
+
+	@Test
+	public void testStartAndStop() {
+		final ScanPublisher publisher = publisher(10);
+		final FakeSubscriber first = new FakeSubscriber(0);
+		final FakeSubscriber second = new FakeSubscriber(0);
+
+		publisher.subscribe(first);
+		assertThat(scanner.starts).isEqualTo(1);
+		publisher.subscribe(second);
+		assertThat(scanner.starts).isEqualTo(1);
+
+		first.subscription.cancel();
+		assertThat(scanner.stops).isEqualTo(0);
+		second.subscription.cancel();
+		assertThat(scanner.stops).isEqualTo(1);
+
+		// A new subscriber starts the scan again.
+		publisher.subscribe(new FakeSubscriber(0));
+		assertThat(scanner.starts).isEqualTo(2);
+	}
+
+	@Test
+	public void testDemand() {
+		final ScanPublisher publisher = publisher(10);
+		final FakeSubscriber subscriber = new FakeSubscriber(2);
+		publisher.subscribe(subscriber);
+
+		final ScanResult first = emit("01:02:03:04:05:01");
+		final ScanResult second = emit("01:02:03:04:05:02");
+		final ScanResult third = emit("01:02:03:04:05:03");
+		assertThat(subscriber.results).containsExactly(first, second).inOrder();
+
+		subscriber.subscription.request(1);
+		assertThat(subscriber.results).containsExactly(first, second, third).inOrder();
+
+		// Nothing is delivered without demand.
+		emit("01:02:03:04:05:04");
+		assertThat(subscriber.results).hasSize(3);
+	}
+
+	@Test
+	public void testDropOldest() {
+		final ScanPublisher publisher = publisher(2);
+		final FakeSubscriber subscriber = new FakeSubscriber(0);
+		publisher.subscribe(subscriber);
+
+		emit("01:02:03:04:05:01");
+		final ScanResult second = emit("01:02:03:04:05:02");
+		final ScanResult third = emit("01:02:03:04:05:03");
+		subscriber.subscription.request(Long.MAX_VALUE);
+
+		assertThat(subscriber.results).containsExactly(second, third).inOrder();
+	}
+
+	@Test
+	public void testNonPositiveRequest() {
+		final ScanPublisher publisher = publisher(10);
+		final FakeSubscriber subscriber = new FakeSubscriber(0);
+		publisher.subscribe(subscriber);
+
+		subscriber.subscription.request(0);
+
+		assertThat(subscriber.error).isInstanceOf(IllegalArgumentException.class);
+		assertThat(scanner.stops).isEqualTo(1);
+
+		// Results are not delivered after the error.
+		subscriber.subscription.request(1);
+		emit("01:02:03:04:05:01");
+		assertThat(subscriber.results).isEmpty();
+	}
+
+	@Test
+	public void testScanFailed() {
+		final ScanPublisher publisher = publisher(10);
+		final FakeSubscriber first = new FakeSubscriber(1);
+		final FakeSubscriber second = new FakeSubscriber(1);
+		publisher.subscribe(first);
+		publisher.subscribe(second);
+
+		//noinspection ConstantConditions
+		scanner.callback.onScanFailed(ScanCallback.SCAN_FAILED_INTERNAL_ERROR);
+
+		assertThat(first.error).isInstanceOf(IllegalStateException.class);
+		assertThat(second.error).isInstanceOf(IllegalStateException.class);
+		assertThat(scanner.stops).isEqualTo(1);
+	}
+
+	@NonNull
+	private ScanPublisher publisher(final int bufferCapacity) {
+		return new ScanPublisher(scanner, new ArrayList<>(), new ScanSettings.Builder().build(),
+				Runnable::run, bufferCapacity);
+	}
+
+	@NonNull
+	private ScanResult emit(@NonNull final String address) {
+		final ScanResult result = TestScanResults.result(address, -60, 0);
+		//noinspection ConstantConditions
+		scanner.callback.onScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result);
+		return result;
+	}
+
+	/**
+	 * A subscriber that requests the given number of items when subscribed and records
+	 * everything it receives.
+	 */
+	private static final class FakeSubscriber implements Flow.Subscriber<List<ScanResult>> {
+		private final long initialRequest;
+		private final List<ScanResult> results = new ArrayList<>();
+		private Flow.Subscription subscription;
+		@Nullable private Throwable error;
+
+		private FakeSubscriber(final long initialRequest) {
+			this.initialRequest = initialRequest;
+		}
+
+		@Override
+		public void onSubscribe(final Flow.Subscription subscription) {
+			this.subscription = subscription;
+			if (initialRequest > 0)
+				subscription.request(initialRequest);
+		}
+
+		@Override
+		public void onNext(final List<ScanResult> item) {
+			results.addAll(item);
+		}
+
+		@Override
+		public void onError(final Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			// Scan publishers never complete
+		}
+	}
+
+	/**
+	 * A scanner that only counts scan starts and stops and keeps the callback of the scan.
+	 */
+	private static final class FakeScanner extends BluetoothLeScannerCompat {
+		@Nullable private ScanCallback callback;
+		private int starts;
+		private int stops;
+
+		@Override
+		void startScanInternal(@NonNull final List<ScanFilter> filters,
+							   @NonNull final ScanSettings settings,
+							   @NonNull final ScanCallback callback,
+							   @NonNull final ScanCallbackScheduler scheduler) {
+			this.callback = callback;
+			starts++;
+		}
+
+		@Override
+		void stopScanInternal(@NonNull final ScanCallback callback) {
+			stops++;
+		}
+
+		@Override
+		void startScanInternal(@NonNull final List<ScanFilter> filters,
+							   @NonNull final ScanSettings settings,
+							   @NonNull final Context context,
+							   @NonNull final PendingIntent callbackIntent,
+							   final int requestCode) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		void stopScanInternal(@NonNull final Context context,
+							  @NonNull final PendingIntent callbackIntent,
+							  final int requestCode) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void flushPendingScanResults(@NonNull final ScanCallback callback) {
+			// Ignore
+		}
+
+		@Override
+		void suspendScansInternal() {
+			// Ignore
+		}
+
+		@Override
+		void resumeScansInternal() {
+			// Ignore
+		}
+
+		@Nullable
+		@Override
+		ScanCallbackWrapper getScanCallbackWrapper(@NonNull final ScanCallback callback) {
+			return null;
+		}
+
+		@Override
+		boolean restartScanInternal(@NonNull final ScanCallbackWrapper wrapper) {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static no.nordicsemi.android.support.v18.scanner.TestScanResults.result;
+
+@RunWith(AndroidJUnit4.class)
+public class ScanResultQueueTest {
+
+	@Test
+	public void testDropOldest() {
+		final ScanResultQueue queue = new ScanResultQueue(2, ScanSettings.OVERFLOW_POLICY_DROP_OLDEST);
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -10, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -20, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -30, 0L));
+
+		assertThat(queue.size()).isEqualTo(2);
+		assertThat(queue.getDroppedCount()).isEqualTo(1);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-20);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-30);
+		assertThat(queue.poll()).isNull();
+	}
+
+	@Test
+	public void testDropNewest() {
+		final ScanResultQueue queue = new ScanResultQueue(2, ScanSettings.OVERFLOW_POLICY_DROP_NEWEST);
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -10, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -20, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -30, 0L));
+
+		assertThat(queue.getDroppedCount()).isEqualTo(1);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-10);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-20);
+	}
+
+	@Test
+	public void testCoalesce() {
+		final ScanResultQueue queue = new ScanResultQueue(2, ScanSettings.OVERFLOW_POLICY_COALESCE);
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -10, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:07", -20, 0L));
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -30, 0L));
+
+		assertThat(queue.size()).isEqualTo(2);
+		assertThat(queue.getCoalescedCount()).isEqualTo(1);
+		assertThat(queue.getDroppedCount()).isEqualTo(0);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-30);
+		//noinspection ConstantConditions
+		assertThat(queue.poll().getRssi()).isEqualTo(-20);
+
+		// A result from a device that has been delivered is queued again.
+		queue.offer(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, result("01:02:03:04:05:06", -40, 0L));
+		assertThat(queue.size()).isEqualTo(1);
+	}
+}
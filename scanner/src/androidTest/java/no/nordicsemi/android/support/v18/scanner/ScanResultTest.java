@@ -44,4 +44,23 @@ public class ScanResultTest {
 		ScanResult resultFromParcel = ScanResult.CREATOR.createFromParcel(parcel);
 		assertThat(result).isEqualTo(resultFromParcel);
 	}
+
+	@Test
+	public void testScanResultEqualityIncludesSignalStatistics() {
+		final BluetoothDevice device = BluetoothAdapter.getDefaultAdapter()
+				.getRemoteDevice("01:02:03:04:05:06");
+		final byte[] scanRecord = new byte[] { 2, 1, 3 };
+		final ScanResult result =
+				new ScanResult(device, ScanRecord.parseFromBytes(scanRecord), -10, 10000L);
+
+		final ScanResult throttled = new ScanResult(result, 3, -12.5f, -10, -10f, Float.NaN);
+		assertThat(throttled).isNotEqualTo(result);
+		assertThat(throttled).isEqualTo(new ScanResult(result, 3, -12.5f, -10, -10f, Float.NaN));
+		assertThat(throttled.hashCode()).isEqualTo(new ScanResult(result, 3, -12.5f, -10, -10f, Float.NaN).hashCode());
+
+		final ScanResult smoothed = new ScanResult(result, 1, -10f, -10, -11.5f, Float.NaN);
+		assertThat(smoothed).isNotEqualTo(result);
+		assertThat(smoothed).isEqualTo(new ScanResult(result, 1, -10f, -10, -11.5f, Float.NaN));
+		assertThat(new ScanResult(result, 1, -10f, -10, -11.5f, 2.0f)).isNotEqualTo(smoothed);
+	}
 }
@@ -21,6 +21,7 @@ import org.junit.runner.RunWith;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 
 @RunWith(AndroidJUnit4.class)
@@ -48,4 +49,105 @@ public class ScanSettingsTest {
 					ScanSettings.CALLBACK_TYPE_MATCH_LOST)
 		);
 	}
+
+	@Test
+	public void testAdaptiveReportDelay() {
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setAdaptiveReportDelay(100, 5000, 20)
+				.build();
+		assertThat(settings.hasAdaptiveReportDelay()).isTrue();
+		assertThat(settings.getReportDelayMillis()).isEqualTo(100);
+		assertThat(settings.getUseHardwareBatchingIfSupported()).isFalse();
+
+		final ScanSettings.Builder builder = new ScanSettings.Builder();
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setAdaptiveReportDelay(0, 5000, 20)
+		);
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setAdaptiveReportDelay(1000, 500, 20)
+		);
+	}
+
+	@Test
+	public void testAdaptivePowerSave() {
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setAdaptivePowerSave(500, 1000, 8000)
+				.build();
+		assertThat(settings.hasAdaptivePowerSave()).isTrue();
+		assertThat(settings.getPowerSaveScan()).isEqualTo(500);
+		assertThat(settings.getPowerSaveRest()).isEqualTo(1000);
+		assertThat(settings.getPowerSaveMaxRest()).isEqualTo(8000);
+
+		final ScanSettings fixed = new ScanSettings.Builder()
+				.setAdaptivePowerSave(500, 1000, 8000)
+				.setPowerSave(500, 2000)
+				.build();
+		assertThat(fixed.hasAdaptivePowerSave()).isFalse();
+		assertThat(fixed.getPowerSaveMaxRest()).isEqualTo(2000);
+
+		final ScanSettings.Builder builder = new ScanSettings.Builder();
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setAdaptivePowerSave(500, 0, 8000)
+		);
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setAdaptivePowerSave(500, 8000, 1000)
+		);
+	}
+
+	@Test
+	public void testPriority() {
+		assertThat(new ScanSettings.Builder().build().getPriority())
+				.isEqualTo(ScanSettings.PRIORITY_NORMAL);
+		assertThat(new ScanSettings.Builder().setPriority(ScanSettings.PRIORITY_HIGH).build().getPriority())
+				.isEqualTo(ScanSettings.PRIORITY_HIGH);
+
+		final ScanSettings.Builder builder = new ScanSettings.Builder();
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setPriority(ScanSettings.PRIORITY_HIGH + 1)
+		);
+	}
+
+	@Test
+	public void testPendingIntentCoalescing() {
+		assertThat(new ScanSettings.Builder().build().getCoalescingMaxResults()).isEqualTo(0);
+
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setPendingIntentCoalescing(10, 4096, 500)
+				.build();
+		assertThat(settings.getCoalescingMaxResults()).isEqualTo(10);
+		assertThat(settings.getCoalescingMaxBytes()).isEqualTo(4096);
+		assertThat(settings.getCoalescingMaxLatencyMillis()).isEqualTo(500);
+
+		final ScanSettings.Builder builder = new ScanSettings.Builder();
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setPendingIntentCoalescing(0, 4096, 500)
+		);
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setPendingIntentCoalescing(10, 0, 500)
+		);
+		assertThrows(IllegalArgumentException.class, () ->
+				builder.setPendingIntentCoalescing(10, 4096, 0)
+		);
+	}
+
+	@Test
+	public void testMarshall() {
+		final ScanSettings settings = new ScanSettings.Builder()
+				.setUseHardwareCallbackTypesIfSupported(false)
+				.setMatchOptions(5000, 1000)
+				.setKalmanSignalFilter(0.01f, 4f)
+				.setPendingIntentCoalescing(10, 4096, 500)
+				.build();
+		final ScanSettings copy = ScanSettings.unmarshall(settings.marshall());
+		assertThat(copy).isNotNull();
+		assertThat(copy.getUseHardwareCallbackTypesIfSupported()).isFalse();
+		assertThat(copy.getMatchLostDeviceTimeout()).isEqualTo(5000);
+		assertThat(copy.getSignalFilter()).isEqualTo(ScanSettings.SIGNAL_FILTER_KALMAN);
+		assertThat(copy.getSignalFilterProcessNoise()).isEqualTo(0.01f);
+		assertThat(copy.getCoalescingMaxResults()).isEqualTo(10);
+		assertThat(copy.getCoalescingMaxLatencyMillis()).isEqualTo(500);
+
+		assertThat(ScanSettings.unmarshall(null)).isNull();
+		assertThat(ScanSettings.unmarshall(new byte[] { 1, 2, 3 })).isNull();
+	}
 }
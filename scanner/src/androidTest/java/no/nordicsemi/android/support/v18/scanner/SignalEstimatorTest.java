@@ -0,0 +1,56 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static no.nordicsemi.android.support.v18.scanner.TestScanResults.result;
+
+@RunWith(AndroidJUnit4.class)
+public class SignalEstimatorTest {
+	private static final String ADDRESS = "01:02:03:04:05:06";
+
+	@Test
+	public void testEwma() {
+		final ScanSettings settings = new ScanSettings.Builder().setEwmaSignalFilter(0.5f).build();
+		final SignalEstimator estimator = new SignalEstimator(settings);
+
+		assertThat(estimator.apply(result(ADDRESS, -60, ScanResult.TX_POWER_NOT_PRESENT, 1)).getSmoothedRssi()).isEqualTo(-60f);
+		assertThat(estimator.apply(result(ADDRESS, -70, ScanResult.TX_POWER_NOT_PRESENT, 2)).getSmoothedRssi()).isEqualTo(-65f);
+		assertThat(estimator.apply(result(ADDRESS, -70, ScanResult.TX_POWER_NOT_PRESENT, 3)).getSmoothedRssi()).isEqualTo(-67.5f);
+	}
+
+	@Test
+	public void testKalman() {
+		final ScanSettings settings = new ScanSettings.Builder().setKalmanSignalFilter(0.01f, 3f).build();
+		final SignalEstimator estimator = new SignalEstimator(settings);
+
+		estimator.apply(result(ADDRESS, -60, ScanResult.TX_POWER_NOT_PRESENT, 1));
+		final float smoothed = estimator.apply(result(ADDRESS, -80, ScanResult.TX_POWER_NOT_PRESENT, 2)).getSmoothedRssi();
+		assertThat(smoothed).isLessThan(-60f);
+		assertThat(smoothed).isGreaterThan(-80f);
+	}
+
+	@Test
+	public void testLostDeviceIsReset() {
+		final ScanSettings settings = new ScanSettings.Builder().setEwmaSignalFilter(0.5f).build();
+		final SignalEstimator estimator = new SignalEstimator(settings);
+
+		estimator.apply(result(ADDRESS, -60, ScanResult.TX_POWER_NOT_PRESENT, 1));
+		final long later = 1 + settings.getMatchLostDeviceTimeout() + 1;
+		assertThat(estimator.apply(result(ADDRESS, -80, ScanResult.TX_POWER_NOT_PRESENT, later)).getSmoothedRssi()).isEqualTo(-80f);
+	}
+
+	@Test
+	public void testDistance() {
+		final ScanSettings settings = new ScanSettings.Builder().setEwmaSignalFilter(1f).build();
+		final SignalEstimator estimator = new SignalEstimator(settings);
+
+		// TX power 0 dBm gives -41 dBm at 1 m.
+		assertThat(estimator.apply(result(ADDRESS, -41, 0, 1)).getEstimatedDistance()).isWithin(0.001f).of(1f);
+		assertThat(estimator.apply(result(ADDRESS, -61, 0, 2)).getEstimatedDistance()).isWithin(0.001f).of(10f);
+		assertThat(estimator.apply(result(ADDRESS, -61, ScanResult.TX_POWER_NOT_PRESENT, 3)).getEstimatedDistance()).isNaN();
+	}
+}
@@ -0,0 +1,43 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static com.google.common.truth.Truth.assertThat;
+import static no.nordicsemi.android.support.v18.scanner.TestScanResults.result;
+
+@RunWith(AndroidJUnit4.class)
+public class StrongestDevicesTest {
+	private static final long TIMEOUT = 10000000000L;
+
+	@Test
+	public void testOrder() {
+		final StrongestDevices devices = new StrongestDevices(TIMEOUT);
+		devices.update(result("01:02:03:04:05:01", -70, 1));
+		devices.update(result("01:02:03:04:05:02", -50, 2));
+		devices.update(result("01:02:03:04:05:03", -60, 3));
+		// The first device comes closer.
+		devices.update(result("01:02:03:04:05:01", -40, 4));
+
+		final List<ScanResult> strongest = devices.getStrongest(2, 5);
+		assertThat(strongest).hasSize(2);
+		assertThat(strongest.get(0).getDevice().getAddress()).isEqualTo("01:02:03:04:05:01");
+		assertThat(strongest.get(1).getDevice().getAddress()).isEqualTo("01:02:03:04:05:02");
+		assertThat(devices.getStrongest(10, 5)).hasSize(3);
+	}
+
+	@Test
+	public void testLostDevicesAreRemoved() {
+		final StrongestDevices devices = new StrongestDevices(TIMEOUT);
+		devices.update(result("01:02:03:04:05:01", -40, 1));
+		devices.update(result("01:02:03:04:05:02", -50, TIMEOUT));
+
+		final List<ScanResult> strongest = devices.getStrongest(2, TIMEOUT + 2);
+		assertThat(strongest).hasSize(1);
+		assertThat(strongest.get(0).getDevice().getAddress()).isEqualTo("01:02:03:04:05:02");
+	}
+}
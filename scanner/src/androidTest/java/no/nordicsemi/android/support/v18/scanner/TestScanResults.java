@@ -0,0 +1,46 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Creates scan results used in tests.
+ */
+/* package */ final class TestScanResults {
+
+	private TestScanResults() {}
+
+	/**
+	 * Creates a legacy scan result without a scan record.
+	 */
+	@NonNull
+	static ScanResult result(@NonNull final String address, final int rssi, final long timestampNanos) {
+		return new ScanResult(device(address), null, rssi, timestampNanos);
+	}
+
+	/**
+	 * Creates a scan result without a scan record, with the given TX power.
+	 */
+	@NonNull
+	static ScanResult result(@NonNull final String address, final int rssi, final int txPower,
+							 final long timestampNanos) {
+		return new ScanResult(device(address), 0, 1, 0, ScanResult.SID_NOT_PRESENT,
+				txPower, rssi, 0, null, timestampNanos);
+	}
+
+	/**
+	 * Creates a legacy scan result with a scan record parsed from the given bytes.
+	 */
+	@NonNull
+	static ScanResult result(@NonNull final String address, final int rssi, @NonNull final byte[] bytes,
+							 final long timestampNanos) {
+		return new ScanResult(device(address), ScanRecord.parseFromBytes(bytes), rssi, timestampNanos);
+	}
+
+	@NonNull
+	private static BluetoothDevice device(@NonNull final String address) {
+		return BluetoothAdapter.getDefaultAdapter().getRemoteDevice(address);
+	}
+}
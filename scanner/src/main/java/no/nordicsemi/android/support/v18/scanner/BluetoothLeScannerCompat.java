@@ -24,7 +24,11 @@ package no.nordicsemi.android.support.v18.scanner;
 
 import android.Manifest;
 import android.app.PendingIntent;
+import android.bluetooth.BluetoothAdapter;
+import android.content.BroadcastReceiver;
 import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
@@ -32,15 +36,20 @@ import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * This class provides methods to perform scan related operations for Bluetooth LE devices. An
@@ -89,6 +98,26 @@ public abstract class BluetoothLeScannerCompat {
 
 	private static BluetoothLeScannerCompat instance;
 
+	/** The context the {@link #adapterStateReceiver} is registered in, or null. */
+	@Nullable private Context adapterStateContext;
+
+	@NonNull
+	private final BroadcastReceiver adapterStateReceiver = new BroadcastReceiver() {
+		@Override
+		public void onReceive(final Context context, final Intent intent) {
+			final int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.STATE_OFF);
+			switch (state) {
+				case BluetoothAdapter.STATE_TURNING_OFF:
+				case BluetoothAdapter.STATE_OFF:
+					suspendScansInternal();
+					break;
+				case BluetoothAdapter.STATE_ON:
+					resumeScansInternal();
+					break;
+			}
+		}
+	};
+
 	/**
 	 * Returns the scanner compat object
 	 * @return scanner implementation
@@ -136,7 +165,7 @@ public abstract class BluetoothLeScannerCompat {
 		}
 		final Handler handler = new Handler(Looper.getMainLooper());
 		startScanInternal(Collections.emptyList(), new ScanSettings.Builder().build(),
-				callback, handler);
+				callback, ScanCallbackScheduler.of(handler));
 	}
 
 	/**
@@ -172,7 +201,7 @@ public abstract class BluetoothLeScannerCompat {
 		final Handler handler = new Handler(Looper.getMainLooper());
 		startScanInternal(filters != null ? filters : Collections.emptyList(),
 				settings != null ? settings : new ScanSettings.Builder().build(),
-				callback, handler);
+				callback, ScanCallbackScheduler.of(handler));
 	}
 
 	/**
@@ -209,7 +238,109 @@ public abstract class BluetoothLeScannerCompat {
 		}
 		startScanInternal(filters != null ? filters : Collections.emptyList(),
 				settings != null ? settings : new ScanSettings.Builder().build(),
-				callback, handler != null ? handler : new Handler(Looper.getMainLooper()));
+				callback, ScanCallbackScheduler.of(handler != null ? handler : new Handler(Looper.getMainLooper())));
+	}
+
+	/**
+	 * Start Bluetooth LE scan. The scan results will be delivered through {@code callback}
+	 * using the given {@link Executor}. Callbacks are called one at a time and in order, even
+	 * if the executor uses multiple threads. Timers used to emulate batching and callback types
+	 * are run on a shared timer thread and their callbacks are also delivered to the executor.
+	 * <p>
+	 * For unfiltered scans, scanning is stopped on screen off to save power. Scanning is
+	 * resumed when screen is turned on again. To avoid this, do filtered scanning by
+	 * using proper {@link ScanFilter}.
+	 * <p>
+	 * For apps targeting {@link Build.VERSION_CODES#R} or lower, this requires the
+	 * {@link Manifest.permission#BLUETOOTH_ADMIN} permission which can be gained with a simple
+	 * {@code <uses-permission>} manifest tag.
+	 * For apps targeting {@link Build.VERSION_CODES#S} or or higher, this requires the
+	 * {@link Manifest.permission#BLUETOOTH_SCAN} permission which can be gained with
+	 * {@link android.app.Activity#requestPermissions(String[], int)}.
+	 * In addition, this requires either the {@link Manifest.permission#ACCESS_FINE_LOCATION}
+	 * permission or a strong assertion that you will never derive the physical location of the device.
+	 * You can make this assertion by declaring {@code usesPermissionFlags="neverForLocation"}
+	 * on the relevant {@code <uses-permission>} manifest tag, but it may restrict the types of
+	 * Bluetooth devices you can interact with.
+	 *
+	 * @param filters  {@link ScanFilter}s for finding exact BLE devices.
+	 * @param settings Optional settings for the scan.
+	 * @param executor The executor used to deliver results.
+	 * @param callback Callback used to deliver scan results.
+	 * @throws IllegalArgumentException If {@code executor} or {@code callback} is null.
+	 */
+	public final void startScan(@Nullable final List<ScanFilter> filters,
+								@Nullable final ScanSettings settings,
+								@NonNull  final Executor executor,
+								@NonNull  final ScanCallback callback) {
+		//noinspection ConstantConditions
+		if (callback == null) {
+			throw new IllegalArgumentException("callback is null");
+		}
+		//noinspection ConstantConditions
+		if (executor == null) {
+			throw new IllegalArgumentException("executor is null");
+		}
+		startScanInternal(filters != null ? filters : Collections.emptyList(),
+				settings != null ? settings : new ScanSettings.Builder().build(),
+				callback, ScanCallbackScheduler.of(executor));
+	}
+
+	/**
+	 * Returns a {@link Flow.Publisher} of scan results. The scan is started when the first
+	 * subscriber subscribes and is stopped when all subscribers have cancelled their
+	 * subscriptions. Results are emitted only when requested by the subscriber. Up to
+	 * {@link Flow#defaultBufferSize()} items not yet requested are buffered for each subscriber,
+	 * after that the oldest items are dropped.
+	 * <p>
+	 * Each item is a list containing a single scan result or a batch of results, depending on
+	 * the report delay set in {@link ScanSettings}. Devices lost are not emitted. A scan failure
+	 * is signalled with {@link Flow.Subscriber#onError(Throwable)}.
+	 * <p>
+	 * Results are delivered using {@link ForkJoinPool#commonPool()}.
+	 * <p>
+	 * For the required permissions, see {@link #startScan(List, ScanSettings, ScanCallback)}.
+	 *
+	 * @param filters  {@link ScanFilter}s for finding exact BLE devices.
+	 * @param settings Optional settings for the scan.
+	 * @return The publisher of scan results.
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.R)
+	@NonNull
+	public final Flow.Publisher<List<ScanResult>> scanPublisher(@Nullable final List<ScanFilter> filters,
+																@Nullable final ScanSettings settings) {
+		return scanPublisher(filters, settings, ForkJoinPool.commonPool(), Flow.defaultBufferSize());
+	}
+
+	/**
+	 * Returns a {@link Flow.Publisher} of scan results.
+	 *
+	 * @param filters        {@link ScanFilter}s for finding exact BLE devices.
+	 * @param settings       Optional settings for the scan.
+	 * @param executor       The executor used to deliver results.
+	 * @param bufferCapacity The maximum number of items buffered for each subscriber.
+	 * @return The publisher of scan results.
+	 * @throws IllegalArgumentException If {@code executor} is null or {@code bufferCapacity}
+	 *                                  is not positive.
+	 * @see #scanPublisher(List, ScanSettings)
+	 */
+	@RequiresApi(api = Build.VERSION_CODES.R)
+	@NonNull
+	public final Flow.Publisher<List<ScanResult>> scanPublisher(@Nullable final List<ScanFilter> filters,
+																@Nullable final ScanSettings settings,
+																@NonNull  final Executor executor,
+																final int bufferCapacity) {
+		//noinspection ConstantConditions
+		if (executor == null) {
+			throw new IllegalArgumentException("executor is null");
+		}
+		if (bufferCapacity <= 0) {
+			throw new IllegalArgumentException("bufferCapacity must be > 0");
+		}
+		return new ScanPublisher(this,
+				filters != null ? filters : Collections.emptyList(),
+				settings != null ? settings : new ScanSettings.Builder().build(),
+				executor, bufferCapacity);
 	}
 
 	/**
@@ -238,12 +369,12 @@ public abstract class BluetoothLeScannerCompat {
 	 * @param filters {@link ScanFilter}s for finding exact BLE devices.
 	 * @param settings Settings for the scan.
 	 * @param callback Callback used to deliver scan results.
-	 * @param handler  Handler used to deliver results.
+	 * @param scheduler Scheduler used to deliver results.
 	 */
 	/* package */ abstract void startScanInternal(@NonNull List<ScanFilter> filters,
 												  @NonNull ScanSettings settings,
 												  @NonNull ScanCallback callback,
-												  @NonNull Handler handler);
+												  @NonNull ScanCallbackScheduler scheduler);
 
 	/**
 	 * Stops an ongoing Bluetooth LE scan. Its implementation depends on the Android version.
@@ -460,48 +591,446 @@ public abstract class BluetoothLeScannerCompat {
 	 */
 	public abstract void flushPendingScanResults(@NonNull ScanCallback callback);
 
+	/**
+	 * Returns devices found by any scan started with this scanner, including scans with
+	 * a {@link PendingIntent}, that were seen in the last
+	 * {@link ScanSettings#MATCH_LOST_DEVICE_TIMEOUT_DEFAULT} milliseconds. Devices that did
+	 * not match the filters, when filtering is emulated, are also included.
+	 * <p>
+	 * The table is shared by all scans, so it may be queried without starting a scan loop
+	 * for every consumer.
+	 * <p>
+	 * Devices are recorded only after {@link #enableDeviceRegistry()} or any of the methods
+	 * querying the table was called for the first time, so the first call may return
+	 * no devices.
+	 *
+	 * @return A snapshot of devices in range, starting from the most recently seen one.
+	 */
+	@NonNull
+	public final List<ScannedDevice> getDevicesInRange() {
+		final DeviceRegistry registry = DeviceRegistry.getInstance();
+		registry.enable();
+		return registry.getDevicesInRange(SystemClock.elapsedRealtimeNanos());
+	}
+
+	/**
+	 * Starts recording devices found by all scans, so that they can be obtained using
+	 * {@link #getDevicesInRange()} and {@link #getDevice(String)}. Recording is disabled
+	 * by default, so that scans of apps that do not use it don't pay for it. It is enabled
+	 * implicitly by the first query.
+	 */
+	public final void enableDeviceRegistry() {
+		DeviceRegistry.getInstance().enable();
+	}
+
+	/**
+	 * Returns the device with given address, if it was seen by any scan started with this
+	 * scanner in the last {@link ScanSettings#MATCH_LOST_DEVICE_TIMEOUT_DEFAULT} milliseconds.
+	 *
+	 * @param address The Bluetooth address of the device, in format "01:23:45:67:89:AB".
+	 * @return A snapshot of the device, or null if it's not in range.
+	 * @see #getDevicesInRange()
+	 */
+	@Nullable
+	public final ScannedDevice getDevice(@NonNull final String address) {
+		//noinspection ConstantConditions
+		if (address == null) {
+			throw new IllegalArgumentException("address is null");
+		}
+		final DeviceRegistry registry = DeviceRegistry.getInstance();
+		registry.enable();
+		return registry.getDevice(address, SystemClock.elapsedRealtimeNanos());
+	}
+
+	/**
+	 * Returns the counter of unique devices seen by all scans in the last minute, hour and day.
+	 * Devices are counted from the moment this method is called for the first time.
+	 *
+	 * @return The process-wide counter.
+	 */
+	@NonNull
+	public final UniqueDeviceCounter getUniqueDeviceCounter() {
+		final DeviceRegistry registry = DeviceRegistry.getInstance();
+		registry.enable();
+		return registry.getUniqueDeviceCounter();
+	}
+
+	/**
+	 * Returns devices with the strongest signal found by the scan started with the given
+	 * callback, strongest first. Devices are ordered by {@link ScanResult#getSmoothedRssi()}.
+	 * <p>
+	 * The scan has to be started with {@link ScanSettings.Builder#setTrackStrongestDevices(boolean)}
+	 * enabled.
+	 *
+	 * @param callback Callback of the Bluetooth LE Scan, it has to be the same instance as the one
+	 *                 used to start scan.
+	 * @param count    The maximum number of devices to return.
+	 * @return The last results of up to {@code count} strongest devices in range.
+	 * @throws IllegalArgumentException If {@code count} &lt; 0.
+	 * @throws IllegalStateException If tracking strongest devices was not enabled.
+	 */
+	@NonNull
+	public final List<ScanResult> getStrongestDevices(@NonNull final ScanCallback callback,
+													  final int count) {
+		//noinspection ConstantConditions
+		if (callback == null) {
+			throw new IllegalArgumentException("callback is null");
+		}
+		if (count < 0) {
+			throw new IllegalArgumentException("count must be >= 0");
+		}
+		final ScanCallbackWrapper wrapper = getScanCallbackWrapper(callback);
+		if (wrapper == null)
+			return Collections.emptyList();
+		return wrapper.getStrongestDevices(count);
+	}
+
+	/**
+	 * Returns a list received in {@link ScanCallback#onBatchScanResults(List)} to the scanner,
+	 * so that it can be reused for the next emulated batch instead of allocating a new one.
+	 * The list must not be used by the application after this method is called.
+	 * <p>
+	 * A batch can be recycled until 4 newer batches have been delivered, so it may be returned
+	 * after the next batch was received, for example when the callback is called on an
+	 * {@link java.util.concurrent.Executor}. Later calls have no effect, and other lists,
+	 * including lists of batches created by the hardware, are ignored.
+	 *
+	 * @param callback Callback of the Bluetooth LE Scan, it has to be the same instance as the one
+	 *                 used to start scan.
+	 * @param results  A list received in {@link ScanCallback#onBatchScanResults(List)}.
+	 */
+	public final void recycleBatch(@NonNull final ScanCallback callback,
+								   @NonNull final List<ScanResult> results) {
+		//noinspection ConstantConditions
+		if (callback == null) {
+			throw new IllegalArgumentException("callback is null");
+		}
+		final ScanCallbackWrapper wrapper = getScanCallbackWrapper(callback);
+		if (wrapper != null)
+			wrapper.recycleBatch(results);
+	}
+
+	/**
+	 * Returns statistics of the scan started with the given callback, for example the number
+	 * of results dropped because the callback could not keep up with incoming results.
+	 *
+	 * @param callback Callback of the Bluetooth LE Scan, it has to be the same instance as the one
+	 *                 used to start scan.
+	 * @return The statistics snapshot, or null if no scan with given callback is running.
+	 * @see ScanSettings.Builder#setDeliveryQueue(int, int)
+	 */
+	@Nullable
+	public final ScanStatistics getScanStatistics(@NonNull final ScanCallback callback) {
+		//noinspection ConstantConditions
+		if (callback == null) {
+			throw new IllegalArgumentException("callback is null");
+		}
+		final ScanCallbackWrapper wrapper = getScanCallbackWrapper(callback);
+		return wrapper != null ? wrapper.getStatistics() : null;
+	}
+
+	/**
+	 * Starts tracking the Bluetooth adapter state. Native scans stop when Bluetooth is turned
+	 * off. With tracking enabled, all scans started with a {@link ScanCallback} are suspended
+	 * when Bluetooth is being turned off, keeping their filters, settings and emulated state,
+	 * and resumed when it is turned on again. Scans are resumed one by one, so that the
+	 * scan start limit on Android Nougat and newer is not exceeded.
+	 * <p>
+	 * Without tracking, scans have to be stopped and started again by the app.
+	 * Scans with a {@link PendingIntent} on Android Oreo and newer are not resumed.
+	 *
+	 * @param context any context, the application context will be used to register a receiver.
+	 * @see #disableAdapterStateTracking()
+	 */
+	public final synchronized void enableAdapterStateTracking(@NonNull final Context context) {
+		if (adapterStateContext != null)
+			return;
+		adapterStateContext = context.getApplicationContext();
+		adapterStateContext.registerReceiver(adapterStateReceiver,
+				new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+	}
+
+	/**
+	 * Stops tracking the Bluetooth adapter state.
+	 *
+	 * @see #enableAdapterStateTracking(Context)
+	 */
+	public final synchronized void disableAdapterStateTracking() {
+		if (adapterStateContext == null)
+			return;
+		adapterStateContext.unregisterReceiver(adapterStateReceiver);
+		adapterStateContext = null;
+	}
+
+	/**
+	 * Stops all native scans started with a {@link ScanCallback}, keeping their wrappers,
+	 * as Bluetooth is being turned off.
+	 */
+	/* package */ abstract void suspendScansInternal();
+
+	/**
+	 * Starts native scans suspended by {@link #suspendScansInternal()} again.
+	 */
+	/* package */ abstract void resumeScansInternal();
+
+	/**
+	 * Returns the wrapper of the given callback, or null if there is no scan started with it.
+	 *
+	 * @param callback The callback used to start scanning.
+	 */
+	@Nullable
+	/* package */ abstract ScanCallbackWrapper getScanCallbackWrapper(@NonNull ScanCallback callback);
+
+	/**
+	 * Restarts the native scan delivering results to the given wrapper, keeping the wrapper
+	 * and its state. Used by the stall watchdog.
+	 *
+	 * @return true if the scan was restarted, or the restart was scheduled, false if it is not
+	 * running, e.g. it is paused in a power save rest interval, or can't be restarted now.
+	 */
+	/* package */ abstract boolean restartScanInternal(@NonNull ScanCallbackWrapper wrapper);
+
 	/* package */ static class ScanCallbackWrapper {
+		/** The weight of the last batch in the arrival rate average. */
+		private static final float ARRIVAL_RATE_ALPHA = 0.3f;
+		/** The number of the latest delivered batches that may be recycled. */
+		private static final int RECYCLABLE_BATCH_COUNT = 4;
+		/** The weight of the last interval in the average interval between native results. */
+		private static final float RESULT_INTERVAL_ALPHA = 0.1f;
+		/** The number of average intervals without results after which the scan is stalled. */
+		/* package */ static final int STALL_RESULT_INTERVALS = 10;
+		/**
+		 * The number of restarts without any result after which the watchdog stops restarting
+		 * the scan until a result is received. The timeout is doubled after each of them.
+		 */
+		/* package */ static final int MAX_UNPRODUCTIVE_RESTARTS = 4;
 
 		@NonNull private final Object LOCK = new Object();
 
 		private final boolean emulateFiltering;
 		private final boolean emulateBatching;
 		private final boolean emulateFoundOrLostCallbackType;
-		private boolean scanningStopped;
+		private final boolean throttleReports;
+		private final boolean reportPayloadChangesOnly;
+		/**
+		 * Set when the scan is stopped. Volatile, as results may still be enqueued from a
+		 * snapshot of wrappers taken before the wrapper was removed.
+		 */
+		private volatile boolean scanningStopped;
 
 		@NonNull final List<ScanFilter> filters;
 		@NonNull final ScanSettings scanSettings;
 		@NonNull final ScanCallback scanCallback;
-		@NonNull final Handler handler;
+		@NonNull final ScanCallbackScheduler scheduler;
+
+		/** Results in the current emulated batch, one per device. */
+		@NonNull private List<ScanResult> scanResults = new ArrayList<>();
+		/** The current interval between emulated batches. */
+		private long reportDelayMillis;
+		/** The time when the current batch was started, used by the adaptive report delay. */
+		private long batchStartTime;
+		/** Average number of results added to a batch per millisecond, or -1 if unknown. */
+		private float arrivalRate = -1;
+		/** The latest batches delivered to the user and not recycled yet, the oldest first. */
+		@NonNull private final List<List<ScanResult>> deliveredScanResults = new ArrayList<>(RECYCLABLE_BATCH_COUNT);
+		/** Delivered batches returned with {@link #recycleBatch(List)}, used as the next batches. */
+		@NonNull private final List<List<ScanResult>> spareScanResults = new ArrayList<>(RECYCLABLE_BATCH_COUNT);
+
+		/** Filters RSSI of each device, or null if no signal filter is set. */
+		@Nullable private final SignalEstimator signalEstimator;
+
+		/** Devices ordered by signal strength, or null if not tracked. */
+		@Nullable private final StrongestDevices strongestDevices;
+
+		/** Results waiting for delivery, or null if the delivery queue is not limited. */
+		@Nullable private final ScanResultQueue deliveryQueue;
+		private boolean deliveryScheduled;
+		/** Counted without a lock, as it is updated for every result on the delivering thread. */
+		@NonNull private final AtomicLong receivedResultCount = new AtomicLong();
+
+		/** Whether the stall watchdog is enabled. */
+		private final boolean watchdogEnabled;
+		/** The time the last native result was received, or 0. */
+		private long lastNativeResultTime;
+		/** The time the native scan was last restarted or resumed, or 0. */
+		private long lastWatchdogResetTime;
+		/** Average interval between native results, in milliseconds, or -1 if unknown. */
+		private float nativeResultInterval = -1;
+		/** The time of the last result before a stall, or 0 if the scan is not stalled. */
+		private long stallStartTime;
+		/** The number of restarts since the last native result. */
+		private int unproductiveRestarts;
+		private int stallRestartCount;
+		private long totalStallMillis;
+		private long maxStallMillis;
+
+		/** The time the native scan was stopped for a rotation, or 0 if no gap is measured. */
+		private volatile long scanGapStartTime;
+		private int rotationCount;
+		private long totalScanGapMillis;
+		private long maxScanGapMillis;
+
+		/**
+		 * A task that restarts the native scan if no results were received for longer than
+		 * expected from the average interval between them.
+		 */
+		@NonNull
+		private final Runnable watchdogTask = new Runnable() {
+			@Override
+			public void run() {
+				if (scanningStopped)
+					return;
+
+				final long minTimeout = scanSettings.getStallTimeoutMillis();
+				final long now = SystemClock.elapsedRealtime();
+				boolean stalled;
+				synchronized (LOCK) {
+					// A scan that gets no results after restarts is most likely fine, but no
+					// device is in range. Back off, as each restart uses the scan start limit.
+					final long timeout = (nativeResultInterval < 0 ? minTimeout :
+							Math.max(minTimeout, (long) (STALL_RESULT_INTERVALS * nativeResultInterval)))
+							<< unproductiveRestarts;
+					stalled = unproductiveRestarts < MAX_UNPRODUCTIVE_RESTARTS
+							&& now - Math.max(lastNativeResultTime, lastWatchdogResetTime) > timeout;
+				}
+				if (stalled) {
+					final boolean restarted = getScanner().restartScanInternal(ScanCallbackWrapper.this);
+					synchronized (LOCK) {
+						if (restarted) {
+							unproductiveRestarts++;
+							stallRestartCount++;
+							if (stallStartTime == 0)
+								stallStartTime = Math.max(lastNativeResultTime, lastWatchdogResetTime);
+						}
+						// If the scan could not be restarted now, e.g. it was paused,
+						// wait for another timeout.
+						lastWatchdogResetTime = now;
+					}
+				}
+				scheduler.postDelayed(this, Math.max(minTimeout / 2, 1));
+			}
+		};
 
-		@NonNull private final List<ScanResult> scanResults = new ArrayList<>();
+		/** A task that delivers results waiting in the {@link #deliveryQueue}. */
+		@NonNull
+		private final Runnable deliveryTask = new Runnable() {
+			@Override
+			public void run() {
+				final ScanResultQueue queue = deliveryQueue;
+				if (queue == null)
+					return;
 
-		@NonNull private final Set<String> devicesInBatch = new HashSet<>();
+				// Deliver only results that are in the queue now. Results received in the
+				// meantime will be delivered by the next run, so the scheduler is not blocked.
+				int count;
+				synchronized (queue) {
+					count = queue.size();
+				}
+				while (count-- > 0) {
+					final int callbackType;
+					final ScanResult result;
+					synchronized (queue) {
+						if (queue.isEmpty())
+							break;
+						callbackType = queue.peekCallbackType();
+						result = queue.poll();
+					}
+					//noinspection ConstantConditions
+					handleScanResult(callbackType, result);
+				}
 
-		/** A collection of scan result of devices in range. */
-		@NonNull private final Map<String, ScanResult> devicesInRange = new HashMap<>();
+				boolean hasMoreResults;
+				synchronized (queue) {
+					hasMoreResults = deliveryScheduled = !queue.isEmpty();
+				}
+				if (hasMoreResults)
+					scheduler.post(this);
+			}
+		};
 
-		/** A task, called periodically, that notifies about match lost. */
+		/** Indexes of devices in {@link #scanResults}, by device address. */
+		@NonNull private final Map<String, Integer> devicesInBatch = new HashMap<>();
+
+		/**
+		 * A collection of scan result of devices in range, ordered from the least recently seen.
+		 * The map is in access-order, so putting a new result for a known device moves it to
+		 * the end. This makes the map an expiry queue: the first entry is always the next one
+		 * to be lost.
+		 */
+		@NonNull private final LinkedHashMap<String, ScanResult> devicesInRange =
+				new LinkedHashMap<>(16, 0.75f, true);
+
+		/**
+		 * A task that notifies about match lost. It is scheduled for the time when the least
+		 * recently seen device times out and only visits the devices that have expired.
+		 */
 		@NonNull
 		private final Runnable matchLostNotifierTask = new Runnable() {
 			@Override
 			public void run() {
 				final long now = SystemClock.elapsedRealtimeNanos();
 
+				final List<ScanResult> lostDevices = new ArrayList<>();
 				synchronized (LOCK) {
 					final Iterator<ScanResult> iterator = devicesInRange.values().iterator();
 					while (iterator.hasNext()) {
 						final ScanResult result = iterator.next();
-						if (result.getTimestampNanos() < now - scanSettings.getMatchLostDeviceTimeout()) {
-							iterator.remove();
-							handler.post(() -> scanCallback.onScanResult(ScanSettings.CALLBACK_TYPE_MATCH_LOST, result));
-						}
+						// Devices are sorted by the time they were last seen, so the first one
+						// that has not timed out ends the sweep.
+						if (result.getTimestampNanos() >= now - scanSettings.getMatchLostDeviceTimeout())
+							break;
+						iterator.remove();
+						lostDevices.add(result);
 					}
 
 					if (!devicesInRange.isEmpty()) {
-						handler.postDelayed(this, scanSettings.getMatchLostTaskInterval());
+						scheduleMatchLostTask(devicesInRange.values().iterator().next(), now);
 					}
 				}
+
+				// All devices lost in this sweep are reported in a single message.
+				if (!lostDevices.isEmpty()) {
+					scheduler.post(() -> scanCallback.onMatchesLost(lostDevices));
+				}
+			}
+		};
+
+		/**
+		 * Packets received from each device since it was last reported, when the device report
+		 * interval is set. The map is in access-order, so the first entry is the device seen
+		 * least recently.
+		 */
+		@NonNull private final LinkedHashMap<String, DeviceReport> deviceReports =
+				new LinkedHashMap<>(16, 0.75f, true);
+
+		/**
+		 * The last reported advertisement of each device, when only payload changes are
+		 * reported. The map is in access-order, so the first entry is the device seen least
+		 * recently.
+		 */
+		@NonNull private final LinkedHashMap<String, DevicePayload> devicePayloads =
+				new LinkedHashMap<>(16, 0.75f, true);
+
+		/** Devices found since the last time the {@link #matchFoundNotifierTask} was run. */
+		@NonNull private final List<ScanResult> devicesFound = new ArrayList<>();
+
+		/**
+		 * A task that notifies about all devices found since it was posted. As scan results are
+		 * also posted to the scheduler, all first matches from a burst of results are reported
+		 * together.
+		 */
+		@NonNull
+		private final Runnable matchFoundNotifierTask = new Runnable() {
+			@Override
+			public void run() {
+				final List<ScanResult> foundDevices;
+				synchronized (LOCK) {
+					if (scanningStopped || devicesFound.isEmpty())
+						return;
+					foundDevices = new ArrayList<>(devicesFound);
+					devicesFound.clear();
+				}
+				scanCallback.onMatchesFound(foundDevices);
 			}
 		};
 
@@ -510,18 +1039,32 @@ public abstract class BluetoothLeScannerCompat {
 										  @NonNull final List<ScanFilter> filters,
 										  @NonNull final ScanSettings settings,
 										  @NonNull final ScanCallback callback,
-										  @NonNull final Handler handler) {
+										  @NonNull final ScanCallbackScheduler scheduler) {
 			this.filters = Collections.unmodifiableList(filters);
 			this.scanSettings = settings;
 			this.scanCallback = callback;
-			this.handler = handler;
+			this.scheduler = scheduler;
 			this.scanningStopped = false;
+			this.deliveryQueue = settings.getDeliveryQueueCapacity() > 0 ?
+					new ScanResultQueue(settings.getDeliveryQueueCapacity(), settings.getDeliveryOverflowPolicy()) : null;
+			this.signalEstimator = settings.getSignalFilter() != ScanSettings.SIGNAL_FILTER_NONE ?
+					new SignalEstimator(settings) : null;
+			this.strongestDevices = settings.getTrackStrongestDevices() ?
+					new StrongestDevices(settings.getMatchLostDeviceTimeout()) : null;
 
 			// Emulate other callback types
 			final boolean callbackTypesSupported = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 			emulateFoundOrLostCallbackType = settings.getCallbackType() != ScanSettings.CALLBACK_TYPE_ALL_MATCHES
 					&& (!callbackTypesSupported || !settings.getUseHardwareCallbackTypesIfSupported());
 
+			// Throttle reports of the same device
+			throttleReports = settings.getDeviceReportIntervalMillis() > 0
+					&& settings.getCallbackType() == ScanSettings.CALLBACK_TYPE_ALL_MATCHES;
+
+			// Report only changed advertisements
+			reportPayloadChangesOnly = settings.getReportOnPayloadChangeOnly()
+					&& settings.getCallbackType() == ScanSettings.CALLBACK_TYPE_ALL_MATCHES;
+
 			// Emulate filtering
 			emulateFiltering = !filters.isEmpty() && (!offloadedFilteringSupported || !settings.getUseHardwareFilteringIfSupported());
 
@@ -529,60 +1072,271 @@ public abstract class BluetoothLeScannerCompat {
 			final long delay = settings.getReportDelayMillis();
 			emulateBatching = delay > 0 && (!offloadedBatchingSupported || !settings.getUseHardwareBatchingIfSupported());
 			if (emulateBatching) {
+				reportDelayMillis = delay;
+				batchStartTime = SystemClock.elapsedRealtime();
 				final Runnable flushPendingScanResultsTask = new Runnable() {
 					@Override
 					public void run() {
 						if (!scanningStopped) {
 							flushPendingScanResults();
-							handler.postDelayed(this, scanSettings.getReportDelayMillis());
+							final long delay;
+							synchronized (LOCK) {
+								delay = reportDelayMillis;
+							}
+							scheduler.postDelayed(this, delay);
 						}
 					}
 				};
-				handler.postDelayed(flushPendingScanResultsTask, delay);
+				scheduler.postDelayed(flushPendingScanResultsTask, delay);
+			}
+
+			// Restart stalled scans
+			watchdogEnabled = settings.getStallTimeoutMillis() > 0;
+			if (watchdogEnabled) {
+				lastWatchdogResetTime = SystemClock.elapsedRealtime();
+				scheduler.postDelayed(watchdogTask, Math.max(settings.getStallTimeoutMillis() / 2, 1));
 			}
 		}
 
 		/* package */ void close() {
 			scanningStopped = true;
-			handler.removeCallbacksAndMessages(null);
+			scheduler.removeAll();
 			synchronized (LOCK) {
 				devicesInRange.clear();
+				devicesFound.clear();
+				deviceReports.clear();
+				devicePayloads.clear();
 				devicesInBatch.clear();
 				scanResults.clear();
+				deliveredScanResults.clear();
+				spareScanResults.clear();
+				if (signalEstimator != null)
+					signalEstimator.clear();
+				if (strongestDevices != null)
+					strongestDevices.clear();
+			}
+			if (deliveryQueue != null) {
+				synchronized (deliveryQueue) {
+					deliveryQueue.clear();
+					deliveryScheduled = false;
+				}
+			}
+		}
+
+		/**
+		 * Schedules the result received from the Bluetooth stack to be handled by
+		 * {@link #handleScanResult(int, ScanResult)}. When the delivery queue is limited,
+		 * the result may be dropped if the callback can't keep up.
+		 * This method may be called from any thread.
+		 */
+		/* package */ void enqueueScanResult(final int callbackType,
+											 @NonNull final ScanResult scanResult) {
+			if (scanningStopped)
+				return;
+
+			if (watchdogEnabled)
+				onNativeResult(SystemClock.elapsedRealtime());
+			if (scanGapStartTime > 0)
+				endScanGap(SystemClock.elapsedRealtime());
+
+			final ScanResultQueue queue = deliveryQueue;
+			if (queue == null) {
+				receivedResultCount.incrementAndGet();
+				scheduler.post(() -> handleScanResult(callbackType, scanResult));
+				return;
+			}
+
+			boolean shouldPost;
+			synchronized (queue) {
+				receivedResultCount.incrementAndGet();
+				queue.offer(callbackType, scanResult);
+				shouldPost = !deliveryScheduled;
+				deliveryScheduled = true;
+			}
+			if (shouldPost)
+				scheduler.post(deliveryTask);
+		}
+
+		/**
+		 * Updates the average interval between native results and ends a stall, if any.
+		 * This method may be called from any thread.
+		 */
+		private void onNativeResult(final long now) {
+			synchronized (LOCK) {
+				unproductiveRestarts = 0;
+				if (stallStartTime > 0) {
+					final long stall = now - stallStartTime;
+					totalStallMillis += stall;
+					maxStallMillis = Math.max(maxStallMillis, stall);
+					stallStartTime = 0;
+				} else if (lastNativeResultTime > lastWatchdogResetTime) {
+					// Intervals spanning a restart or a pause would distort the average.
+					final long interval = now - lastNativeResultTime;
+					nativeResultInterval = nativeResultInterval < 0 ? interval :
+							RESULT_INTERVAL_ALPHA * interval + (1 - RESULT_INTERVAL_ALPHA) * nativeResultInterval;
+				}
+				lastNativeResultTime = now;
+			}
+		}
+
+		/**
+		 * Called when the native scan delivering results to this wrapper was restarted on
+		 * request of another wrapper sharing it, so that this wrapper's watchdog does not
+		 * restart it again.
+		 *
+		 * @param now the time the scan was restarted.
+		 */
+		/* package */ void onNativeScanRestarted(final long now) {
+			synchronized (LOCK) {
+				lastWatchdogResetTime = Math.max(lastWatchdogResetTime, now);
+			}
+		}
+
+		/**
+		 * Called when the native scan was stopped and started again to avoid being downgraded.
+		 * The gap is measured until the next result is received.
+		 *
+		 * @param stopTime the time the native scan was stopped.
+		 */
+		/* package */ void onNativeScanRotated(final long stopTime) {
+			synchronized (LOCK) {
+				rotationCount++;
+				scanGapStartTime = stopTime;
+			}
+		}
+
+		private void endScanGap(final long now) {
+			synchronized (LOCK) {
+				// Another thread may have ended the gap in the meantime.
+				if (scanGapStartTime == 0)
+					return;
+				final long gap = now - scanGapStartTime;
+				totalScanGapMillis += gap;
+				maxScanGapMillis = Math.max(maxScanGapMillis, gap);
+				scanGapStartTime = 0;
+			}
+		}
+
+		@NonNull
+		/* package */ ScanStatistics getStatistics() {
+			final int restarts, rotations;
+			final long totalStall, maxStall, totalGap, maxGap;
+			synchronized (LOCK) {
+				restarts = stallRestartCount;
+				totalStall = totalStallMillis;
+				maxStall = maxStallMillis;
+				rotations = rotationCount;
+				totalGap = totalScanGapMillis;
+				maxGap = maxScanGapMillis;
+			}
+			final ScanResultQueue queue = deliveryQueue;
+			if (queue == null) {
+				return new ScanStatistics(receivedResultCount.get(), 0, 0, 0,
+						restarts, totalStall, maxStall, rotations, totalGap, maxGap);
+			}
+			synchronized (queue) {
+				return new ScanStatistics(receivedResultCount.get(), queue.getDroppedCount(),
+						queue.getCoalescedCount(), queue.getMaxSize(),
+						restarts, totalStall, maxStall, rotations, totalGap, maxGap);
 			}
 		}
 
 		/* package */ void flushPendingScanResults() {
 			if (emulateBatching && !scanningStopped) {
+				final List<ScanResult> batch;
 				synchronized (LOCK) {
-					scanCallback.onBatchScanResults(new ArrayList<>(scanResults));
-					scanResults.clear();
+					// Swap the buffers. The next batch uses the recycled list, if there is one,
+					// otherwise a new one large enough for the same number of devices.
+					batch = scanResults;
+					if (!spareScanResults.isEmpty()) {
+						scanResults = spareScanResults.remove(spareScanResults.size() - 1);
+					} else {
+						scanResults = new ArrayList<>(Math.max(batch.size(), 10));
+					}
+					// A batch that was not recycled in time is left to the garbage collector.
+					if (deliveredScanResults.size() == RECYCLABLE_BATCH_COUNT)
+						deliveredScanResults.remove(0);
+					deliveredScanResults.add(batch);
 					devicesInBatch.clear();
+					if (scanSettings.hasAdaptiveReportDelay())
+						updateReportDelay(batch.size());
+				}
+				scanCallback.onBatchScanResults(batch);
+			}
+		}
+
+		/**
+		 * Updates the average rate at which results are added to batches and sets the
+		 * report delay so that the next batch has close to the target size.
+		 */
+		private void updateReportDelay(final int batchSize) {
+			final long now = SystemClock.elapsedRealtime();
+			final long window = Math.max(1, now - batchStartTime);
+			batchStartTime = now;
+
+			final float rate = (float) batchSize / window;
+			arrivalRate = arrivalRate < 0 ? rate : arrivalRate + ARRIVAL_RATE_ALPHA * (rate - arrivalRate);
+
+			final long minDelay = scanSettings.getMinReportDelayMillis();
+			final long maxDelay = scanSettings.getMaxReportDelayMillis();
+			final long delay = arrivalRate > 0 ?
+					(long) (scanSettings.getTargetBatchSize() / arrivalRate) : maxDelay;
+			reportDelayMillis = Math.max(minDelay, Math.min(maxDelay, delay));
+		}
+
+		@NonNull
+		/* package */ List<ScanResult> getStrongestDevices(final int count) {
+			if (strongestDevices == null)
+				throw new IllegalStateException("Tracking strongest devices not enabled");
+			synchronized (LOCK) {
+				return strongestDevices.getStrongest(count, SystemClock.elapsedRealtimeNanos());
+			}
+		}
+
+		/* package */ void recycleBatch(@NonNull final List<ScanResult> batch) {
+			synchronized (LOCK) {
+				// Batches are compared by identity, as different lists may contain equal results.
+				for (int i = 0; i < deliveredScanResults.size(); i++) {
+					if (deliveredScanResults.get(i) == batch) {
+						deliveredScanResults.remove(i);
+						batch.clear();
+						spareScanResults.add(batch);
+						return;
+					}
 				}
 			}
 		}
 
 		/* package */ void handleScanResult(final int callbackType,
-											@NonNull final ScanResult scanResult) {
-			if (scanningStopped || !filters.isEmpty() && !matches(scanResult))
+											@NonNull final ScanResult result) {
+			if (scanningStopped || !filters.isEmpty() && !matches(result))
 				return;
 
+			final ScanResult scanResult = estimateSignal(result);
+			if (strongestDevices != null && callbackType != ScanSettings.CALLBACK_TYPE_MATCH_LOST) {
+				synchronized (LOCK) {
+					strongestDevices.update(scanResult);
+				}
+			}
+
 			final String deviceAddress = scanResult.getDevice().getAddress();
 
 			// Notify if a new device was found and callback type is FIRST MATCH
 			if (emulateFoundOrLostCallbackType) { // -> Callback type != ScanSettings.CALLBACK_TYPE_ALL_MATCHES
 				ScanResult previousResult;
 				boolean firstResult;
-				synchronized (devicesInRange) {
-					// The periodic task will be started only on the first result
+				synchronized (LOCK) {
+					// The match lost task will be started only on the first result. Later on
+					// it reschedules itself for the time the next device is going to time out.
 					firstResult = devicesInRange.isEmpty();
-					// Save the first result or update the old one with new data
+					// Save the first result or update the old one with new data. This also
+					// moves the device to the end of the expiry queue.
 					previousResult = devicesInRange.put(deviceAddress, scanResult);
 				}
 
 				if (previousResult == null) {
 					if ((scanSettings.getCallbackType() & ScanSettings.CALLBACK_TYPE_FIRST_MATCH) > 0) {
-						scanCallback.onScanResult(ScanSettings.CALLBACK_TYPE_FIRST_MATCH, scanResult);
+						notifyMatchFound(scanResult);
 					}
 				}
 
@@ -590,8 +1344,7 @@ public abstract class BluetoothLeScannerCompat {
 				// will check the timestamp periodically
 				if (firstResult) {
 					if ((scanSettings.getCallbackType() & ScanSettings.CALLBACK_TYPE_MATCH_LOST) > 0) {
-						handler.removeCallbacks(matchLostNotifierTask);
-						handler.postDelayed(matchLostNotifierTask, scanSettings.getMatchLostTaskInterval());
+						scheduleMatchLostTask(scanResult, SystemClock.elapsedRealtimeNanos());
 					}
 				}
 			} else {
@@ -600,34 +1353,203 @@ public abstract class BluetoothLeScannerCompat {
 				// batching. Otherwise handleScanResults(List) is called, not this method.
 				if (emulateBatching) {
 					synchronized (LOCK) {
-						if (!devicesInBatch.contains(deviceAddress)) {  // add only the first record from the device, others will be skipped
-							scanResults.add(scanResult);
-							devicesInBatch.add(deviceAddress);
-						}
+						addToBatch(deviceAddress, scanResult);
 					}
 					return;
 				}
 
+				if (reportPayloadChangesOnly && callbackType == ScanSettings.CALLBACK_TYPE_ALL_MATCHES
+						&& !hasPayloadChanged(scanResult)) {
+					return;
+				}
+
+				if (throttleReports && callbackType == ScanSettings.CALLBACK_TYPE_ALL_MATCHES) {
+					final ScanResult report = throttle(scanResult);
+					if (report != null)
+						scanCallback.onScanResult(callbackType, report);
+					return;
+				}
+
 				scanCallback.onScanResult(callbackType, scanResult);
 			}
 		}
 
+		/**
+		 * Adds the result to the current batch. Each device is added only once, later results
+		 * replace the batched one according to the batch policy.
+		 */
+		private void addToBatch(@NonNull final String deviceAddress,
+								@NonNull final ScanResult scanResult) {
+			final Integer index = devicesInBatch.get(deviceAddress);
+			if (index == null) {
+				devicesInBatch.put(deviceAddress, scanResults.size());
+				scanResults.add(scanResult);
+				return;
+			}
+			switch (scanSettings.getBatchPolicy()) {
+				case ScanSettings.BATCH_POLICY_KEEP_LATEST:
+					scanResults.set(index, scanResult);
+					break;
+				case ScanSettings.BATCH_POLICY_KEEP_STRONGEST:
+					if (scanResult.getRssi() > scanResults.get(index).getRssi())
+						scanResults.set(index, scanResult);
+					break;
+				default:
+					// Keep the first result
+					break;
+			}
+		}
+
+		/**
+		 * Returns whether the advertisement of the device differs from the last reported one,
+		 * or the RSSI changed by at least the threshold. If so, the result is remembered as
+		 * the last reported one.
+		 */
+		private boolean hasPayloadChanged(@NonNull final ScanResult scanResult) {
+			final long now = scanResult.getTimestampNanos();
+			final String deviceAddress = scanResult.getDevice().getAddress();
+			final ScanRecord record = scanResult.getScanRecord();
+			final byte[] bytes = record != null ? record.getBytes() : null;
+			final int hash = Arrays.hashCode(bytes);
+			final int rssi = scanResult.getRssi();
+			final int rssiThreshold = scanSettings.getPayloadChangeRssiThreshold();
+
+			synchronized (LOCK) {
+				DevicePayload payload = devicePayloads.get(deviceAddress);
+				if (payload == null) {
+					DeviceState.forgetEldest(devicePayloads, now, scanSettings.getMatchLostDeviceTimeout());
+					payload = new DevicePayload();
+					devicePayloads.put(deviceAddress, payload);
+				} else {
+					payload.lastSeenNanos = now;
+					// Different hashes mean different data. Only if they are equal, the bytes
+					// need to be compared.
+					final boolean payloadChanged = hash != payload.hash || !Arrays.equals(bytes, payload.bytes);
+					final boolean rssiChanged = rssiThreshold > 0 && Math.abs(rssi - payload.rssi) >= rssiThreshold;
+					if (!payloadChanged && !rssiChanged)
+						return false;
+				}
+				payload.lastSeenNanos = now;
+				payload.hash = hash;
+				payload.bytes = bytes;
+				payload.rssi = rssi;
+				return true;
+			}
+		}
+
+		/**
+		 * Records the packet and returns the result to be reported, or null if the device was
+		 * reported less than the device report interval ago.
+		 */
+		@Nullable
+		private ScanResult throttle(@NonNull final ScanResult scanResult) {
+			final long now = scanResult.getTimestampNanos();
+			final long interval = scanSettings.getDeviceReportIntervalMillis() * 1000000L;
+			final String deviceAddress = scanResult.getDevice().getAddress();
+
+			synchronized (LOCK) {
+				DeviceReport report = deviceReports.get(deviceAddress);
+				if (report == null) {
+					DeviceState.forgetEldest(deviceReports, now,
+							Math.max(interval, scanSettings.getMatchLostDeviceTimeout()));
+					report = new DeviceReport();
+					deviceReports.put(deviceAddress, report);
+				}
+
+				report.add(scanResult.getRssi(), now);
+				if (report.reported && now - report.lastReportNanos < interval)
+					return null;
+
+				final ScanResult result = report.count == 1 ? scanResult :
+						new ScanResult(scanResult, report.count, (float) report.rssiSum / report.count,
+								report.rssiMax, scanResult.getSmoothedRssi(), scanResult.getEstimatedDistance());
+				report.reset(now);
+				return result;
+			}
+		}
+
+		/**
+		 * Returns whether first match notifications may be postponed and reported together
+		 * with other devices found at the same time.
+		 *
+		 * @return true, if the callback may be called asynchronously; false if it has to be called
+		 * before {@link #handleScanResult(int, ScanResult)} returns.
+		 */
+		/* package */ boolean coalesceMatchFoundNotifications() {
+			return true;
+		}
+
+		private void notifyMatchFound(@NonNull final ScanResult scanResult) {
+			if (!coalesceMatchFoundNotifications()) {
+				scanCallback.onMatchesFound(Collections.singletonList(scanResult));
+				return;
+			}
+
+			boolean shouldPost;
+			synchronized (LOCK) {
+				shouldPost = devicesFound.isEmpty();
+				devicesFound.add(scanResult);
+			}
+			if (shouldPost) {
+				scheduler.post(matchFoundNotifierTask);
+			}
+		}
+
+		/**
+		 * Schedules the match lost task for the time when the given result times out.
+		 *
+		 * @param oldestResult the result of the least recently seen device.
+		 * @param now          current time in nanoseconds since boot.
+		 */
+		private void scheduleMatchLostTask(@NonNull final ScanResult oldestResult, final long now) {
+			final long expiresInNanos = oldestResult.getTimestampNanos()
+					+ scanSettings.getMatchLostDeviceTimeout() - now;
+			// Round up to whole milliseconds, so that the task does not wake up too early.
+			final long delay = Math.max(0, (expiresInNanos + 999999L) / 1000000L);
+			scheduler.removeCallbacks(matchLostNotifierTask);
+			scheduler.postDelayed(matchLostNotifierTask, delay);
+		}
+
 		/* package */ void handleScanResults(@NonNull final List<ScanResult> results) {
 			if (scanningStopped)
 				return;
 
+			if (watchdogEnabled && !results.isEmpty())
+				onNativeResult(SystemClock.elapsedRealtime());
+			if (scanGapStartTime > 0 && !results.isEmpty())
+				endScanGap(SystemClock.elapsedRealtime());
+
 			List<ScanResult> filteredResults = results;
 
-			if (emulateFiltering) {
-				filteredResults = new ArrayList<>();
+			if (emulateFiltering || signalEstimator != null) {
+				filteredResults = new ArrayList<>(results.size());
 				for (final ScanResult result : results)
-					if (matches(result))
-						filteredResults.add(result);
+					if (!emulateFiltering || matches(result))
+						filteredResults.add(estimateSignal(result));
+			}
+
+			if (strongestDevices != null) {
+				synchronized (LOCK) {
+					for (final ScanResult result : filteredResults)
+						strongestDevices.update(result);
+				}
 			}
 
 			scanCallback.onBatchScanResults(filteredResults);
 		}
 
+		/**
+		 * Returns the result with the smoothed RSSI, if a signal filter is set.
+		 */
+		@NonNull
+		private ScanResult estimateSignal(@NonNull final ScanResult result) {
+			if (signalEstimator == null)
+				return result;
+			synchronized (LOCK) {
+				return signalEstimator.apply(result);
+			}
+		}
+
 		/* package */ void handleScanError(final int errorCode) {
 			scanCallback.onScanFailed(errorCode);
 		}
@@ -639,5 +1561,40 @@ public abstract class BluetoothLeScannerCompat {
 			}
 			return false;
 		}
+
+		/**
+		 * The last reported advertisement of a device.
+		 */
+		private static final class DevicePayload extends DeviceState {
+			private int hash;
+			@Nullable private byte[] bytes;
+			private int rssi;
+		}
+
+		/**
+		 * Packets received from a device since it was last reported.
+		 */
+		private static final class DeviceReport extends DeviceState {
+			private boolean reported;
+			private long lastReportNanos;
+			private int count;
+			private int rssiSum;
+			private int rssiMax = Integer.MIN_VALUE;
+
+			private void add(final int rssi, final long timestampNanos) {
+				count++;
+				rssiSum += rssi;
+				rssiMax = Math.max(rssiMax, rssi);
+				lastSeenNanos = timestampNanos;
+			}
+
+			private void reset(final long timestampNanos) {
+				reported = true;
+				lastReportNanos = timestampNanos;
+				count = 0;
+				rssiSum = 0;
+				rssiMax = Integer.MIN_VALUE;
+			}
+		}
 	}
 }
@@ -35,7 +35,10 @@ import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 @SuppressWarnings("deprecation")
@@ -47,19 +50,71 @@ import java.util.List;
 	 */
 	@NonNull private final ScanCallbackWrapperSet<ScanCallbackWrapper> wrappers = new ScanCallbackWrapperSet<>();
 
+	/**
+	 * An immutable snapshot of {@link #wrappers}, published whenever a wrapper is added or
+	 * removed. The {@link #scanCallback} iterates over it without taking any lock, so delivery
+	 * of results does not wait for the app starting or stopping scans.
+	 */
+	@NonNull private volatile ScanCallbackWrapper[] wrappersSnapshot = new ScanCallbackWrapper[0];
+
 	@Nullable private HandlerThread handlerThread;
-	@Nullable private Handler powerSaveHandler;
+	@Nullable private volatile Handler powerSaveHandler;
 
 	private long powerSaveRestInterval;
 	private long powerSaveScanInterval;
 
+	/**
+	 * The longest rest interval when the rest interval adapts to the discovery yield,
+	 * or the same as {@link #powerSaveRestInterval} when it's fixed.
+	 */
+	private long powerSaveMaxRestInterval;
+	/** Whether the rest interval adapts to the number of new devices found. */
+	private volatile boolean adaptiveRest;
+	/** The lock guarding the adaptive rest interval and the devices found. */
+	@NonNull private final Object adaptiveRestLock = new Object();
+	/** The current adaptive rest interval. */
+	private long adaptiveRestInterval;
+	/** Addresses of devices found in the previous and in the current scan interval. */
+	@NonNull private Set<String> devicesInLastScanInterval = new HashSet<>();
+	@NonNull private Set<String> devicesInScanInterval = new HashSet<>();
+	private int newDevicesInScanInterval;
+	/** Whether the native scan is stopped for a rest interval. */
+	private volatile boolean resting;
+	/** Whether the native scan is stopped because Bluetooth is off. */
+	private volatile boolean suspended;
+	/** Whether the {@link #restartTask} is posted. */
+	@NonNull private final AtomicBoolean restartPending = new AtomicBoolean();
+
+	/**
+	 * Restarts the shared native scan on request of stall watchdogs. The task runs on the
+	 * power save handler, so the restart can't interleave with stopping the scan for a rest
+	 * interval. Requests from multiple wrappers made before it runs are handled once.
+	 */
+	private final Runnable restartTask = new Runnable() {
+		@Override
+		public void run() {
+			restartPending.set(false);
+			final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+			final ScanCallbackWrapper[] snapshot = wrappersSnapshot;
+			if (adapter == null || resting || suspended || snapshot.length == 0)
+				return;
+			adapter.stopLeScan(scanCallback);
+			adapter.startLeScan(scanCallback);
+			// The native scan is shared by all callbacks, so all of them were restarted.
+			final long now = SystemClock.elapsedRealtime();
+			for (final ScanCallbackWrapper wrapper : snapshot)
+				wrapper.onNativeScanRestarted(now);
+		}
+	};
+
 	private final Runnable powerSaveSleepTask = new Runnable() {
 		@Override
 		public void run() {
 			final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-			if (adapter != null && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
+			if (adapter != null && !suspended && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
 				adapter.stopLeScan(scanCallback);
-				powerSaveHandler.postDelayed(powerSaveScanTask, powerSaveRestInterval);
+				resting = true;
+				powerSaveHandler.postDelayed(powerSaveScanTask, getNextRestInterval());
 			}
 		}
 	};
@@ -68,8 +123,9 @@ import java.util.List;
 		@Override
 		public void run() {
 			final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-			if (adapter != null && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
+			if (adapter != null && !suspended && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
 				adapter.startLeScan(scanCallback);
+				resting = false;
 				powerSaveHandler.postDelayed(powerSaveSleepTask, powerSaveScanInterval);
 			}
 		}
@@ -81,10 +137,11 @@ import java.util.List;
 	/* package */ void startScanInternal(@NonNull final List<ScanFilter> filters,
 										 @NonNull final ScanSettings settings,
 										 @NonNull final ScanCallback callback,
-										 @NonNull final Handler handler) {
+										 @NonNull final ScanCallbackScheduler scheduler) {
 		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
 
 		boolean shouldStart;
+		List<ScanCallbackWrapper> collected;
 
 		synchronized (wrappers) {
 			if (wrappers.contains(callback)) {
@@ -93,10 +150,15 @@ import java.util.List;
 			final UserScanCallbackWrapper callbackWrapper = new UserScanCallbackWrapper(callback);
 			final ScanCallbackWrapper wrapper = new ScanCallbackWrapper(
 					false, false,
-					filters, settings, callbackWrapper, handler);
+					filters, settings, callbackWrapper, scheduler);
+			// The scan is still running if only wrappers of collected callbacks are left.
 			shouldStart = wrappers.isEmpty();
+			collected = wrappers.purge();
 			wrappers.add(wrapper);
+			publishSnapshot();
 		}
+		for (final ScanCallbackWrapper wrapper : collected)
+			wrapper.close();
 
 		if (handlerThread == null) {
 			handlerThread = new HandlerThread(BluetoothLeScannerImplJB.class.getName());
@@ -117,14 +179,21 @@ import java.util.List;
 
 		boolean shouldStop;
 		ScanCallbackWrapper wrapper;
+		List<ScanCallbackWrapper> collected;
 		synchronized (wrappers) {
 			wrapper = wrappers.remove(callback);
+			collected = wrappers.purge();
 			shouldStop = wrappers.isEmpty();
+			// Dead wrappers may have been removed even if the callback was not found.
+			publishSnapshot();
 		}
-		if (wrapper == null)
+		for (final ScanCallbackWrapper collectedWrapper : collected)
+			collectedWrapper.close();
+		if (wrapper == null && collected.isEmpty())
 			return;
 
-		wrapper.close();
+		if (wrapper != null)
+			wrapper.close();
 
 		setPowerSaveSettings();
 
@@ -187,15 +256,83 @@ import java.util.List;
 		wrapper.flushPendingScanResults();
 	}
 
+	@Nullable
+	@Override
+	/* package */ ScanCallbackWrapper getScanCallbackWrapper(@NonNull final ScanCallback callback) {
+		synchronized (wrappers) {
+			return wrappers.get(callback);
+		}
+	}
+
+	@Override
+	/* package */ boolean restartScanInternal(@NonNull final ScanCallbackWrapper wrapper) {
+		final Handler handler = powerSaveHandler;
+		if (handler == null || resting || suspended)
+			return false;
+		// The state is checked again when the task runs.
+		if (restartPending.compareAndSet(false, true))
+			handler.post(restartTask);
+		return true;
+	}
+
+	@Override
+	/* package */ void suspendScansInternal() {
+		suspended = true;
+		if (powerSaveHandler != null) {
+			powerSaveHandler.removeCallbacks(powerSaveScanTask);
+			powerSaveHandler.removeCallbacks(powerSaveSleepTask);
+		}
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		if (adapter != null)
+			adapter.stopLeScan(scanCallback);
+	}
+
+	@Override
+	/* package */ void resumeScansInternal() {
+		if (!suspended)
+			return;
+		suspended = false;
+		resting = false;
+
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		boolean empty;
+		synchronized (wrappers) {
+			empty = wrappers.isEmpty();
+		}
+		if (adapter == null || empty)
+			return;
+
+		// The native scan is shared by all callbacks, so a single start resumes all of them.
+		adapter.startLeScan(scanCallback);
+		if (powerSaveHandler != null && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
+			powerSaveHandler.removeCallbacks(powerSaveScanTask);
+			powerSaveHandler.removeCallbacks(powerSaveSleepTask);
+			powerSaveHandler.postDelayed(powerSaveSleepTask, powerSaveScanInterval);
+		}
+	}
+
 	/**
-	 * This method goes through registered callbacks and sets the power rest and scan intervals
-	 * to next lowest value.
+	 * This method goes through registered callbacks and merges their settings into the scan
+	 * and rest intervals of the native scan. Only callbacks with the highest priority are taken
+	 * into account. If any of them scans continuously, so does the native scan. Otherwise,
+	 * the intervals are set to next lowest value.
+	 * <p>
+	 * The power save tasks are rescheduled only if the merged intervals have changed.
 	 */
 	private void setPowerSaveSettings() {
-		long minRest = Long.MAX_VALUE, minScan = Long.MAX_VALUE;
+		long minRest = Long.MAX_VALUE, minScan = Long.MAX_VALUE, minMaxRest = Long.MAX_VALUE;
+		boolean continuous = false;
+		boolean empty;
 		synchronized (wrappers) {
+			empty = wrappers.isEmpty();
+			int maxPriority = ScanSettings.PRIORITY_LOW;
+			for (final ScanCallbackWrapper wrapper : wrappers.values()) {
+				maxPriority = Math.max(maxPriority, wrapper.scanSettings.getPriority());
+			}
 			for (final ScanCallbackWrapper wrapper : wrappers.values()) {
 				final ScanSettings settings = wrapper.scanSettings;
+				if (settings.getPriority() < maxPriority)
+					continue;
 				if (settings.hasPowerSaveMode()) {
 					if (minRest > settings.getPowerSaveRest()) {
 						minRest = settings.getPowerSaveRest();
@@ -203,23 +340,92 @@ import java.util.List;
 					if (minScan > settings.getPowerSaveScan()) {
 						minScan = settings.getPowerSaveScan();
 					}
+					// A scan with fixed intervals limits the adaptive rest interval of others.
+					if (minMaxRest > settings.getPowerSaveMaxRest()) {
+						minMaxRest = settings.getPowerSaveMaxRest();
+					}
+				} else {
+					continuous = true;
 				}
 			}
 		}
-		if (minRest < Long.MAX_VALUE && minScan < Long.MAX_VALUE) {
+		if (!continuous && minRest < Long.MAX_VALUE && minScan < Long.MAX_VALUE) {
+			final long maxRest = Math.max(minRest, minMaxRest);
+			if (powerSaveRestInterval == minRest && powerSaveScanInterval == minScan
+					&& powerSaveMaxRestInterval == maxRest) {
+				// Nothing has changed, the current cycle may continue.
+				return;
+			}
 			powerSaveRestInterval = minRest;
 			powerSaveScanInterval = minScan;
+			synchronized (adaptiveRestLock) {
+				powerSaveMaxRestInterval = maxRest;
+				adaptiveRestInterval = minRest;
+				devicesInLastScanInterval.clear();
+				devicesInScanInterval.clear();
+				newDevicesInScanInterval = 0;
+			}
+			adaptiveRest = maxRest > minRest;
 			if (powerSaveHandler != null) {
 				powerSaveHandler.removeCallbacks(powerSaveScanTask);
 				powerSaveHandler.removeCallbacks(powerSaveSleepTask);
-				powerSaveHandler.postDelayed(powerSaveSleepTask, powerSaveScanInterval);
+				if (resting)
+					powerSaveHandler.post(powerSaveScanTask);
+				else
+					powerSaveHandler.postDelayed(powerSaveSleepTask, powerSaveScanInterval);
 			}
 		} else {
 			powerSaveRestInterval = powerSaveScanInterval = 0;
+			synchronized (adaptiveRestLock) {
+				powerSaveMaxRestInterval = 0;
+			}
+			adaptiveRest = false;
 			if (powerSaveHandler != null) {
 				powerSaveHandler.removeCallbacks(powerSaveScanTask);
 				powerSaveHandler.removeCallbacks(powerSaveSleepTask);
 			}
+			// If the native scan was stopped for a rest interval, the remaining scans would
+			// not get any results.
+			if (resting && !empty && !suspended) {
+				final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+				if (adapter != null)
+					adapter.startLeScan(scanCallback);
+			}
+			resting = false;
+		}
+	}
+
+	/**
+	 * Publishes a new snapshot of the wrappers. Must be called while holding the lock
+	 * on {@link #wrappers}.
+	 */
+	private void publishSnapshot() {
+		final Collection<ScanCallbackWrapper> values = wrappers.values();
+		wrappersSnapshot = values.toArray(new ScanCallbackWrapper[0]);
+	}
+
+	/**
+	 * Returns the rest interval to sleep for after the scan interval that has just finished.
+	 * If the rest interval is adaptive, it is doubled if no new devices were found in that scan
+	 * interval, and reset to the minimum otherwise.
+	 */
+	private long getNextRestInterval() {
+		synchronized (adaptiveRestLock) {
+			if (powerSaveMaxRestInterval <= powerSaveRestInterval)
+				return powerSaveRestInterval;
+
+			if (newDevicesInScanInterval > 0)
+				adaptiveRestInterval = powerSaveRestInterval;
+			else
+				adaptiveRestInterval = Math.min(adaptiveRestInterval * 2, powerSaveMaxRestInterval);
+
+			// Swap the sets, the current one becomes the previous one.
+			final Set<String> devices = devicesInLastScanInterval;
+			devicesInLastScanInterval = devicesInScanInterval;
+			devicesInScanInterval = devices;
+			devicesInScanInterval.clear();
+			newDevicesInScanInterval = 0;
+			return adaptiveRestInterval;
 		}
 	}
 
@@ -227,11 +433,17 @@ import java.util.List;
 		final ScanResult scanResult = new ScanResult(device, ScanRecord.parseFromBytes(scanRecord),
 				rssi, SystemClock.elapsedRealtimeNanos());
 
-		synchronized (wrappers) {
-			final Collection<ScanCallbackWrapper> scanCallbackWrappers = wrappers.values();
-			for (final ScanCallbackWrapper wrapper : scanCallbackWrappers) {
-				wrapper.handler.post(() -> wrapper.handleScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, scanResult));
+		if (adaptiveRest) {
+			synchronized (adaptiveRestLock) {
+				final String address = device.getAddress();
+				if (devicesInScanInterval.add(address) && !devicesInLastScanInterval.contains(address))
+					newDevicesInScanInterval++;
 			}
 		}
+		for (final ScanCallbackWrapper wrapper : wrappersSnapshot) {
+			wrapper.enqueueScanResult(ScanSettings.CALLBACK_TYPE_ALL_MATCHES, scanResult);
+		}
+		// The packet is recorded once, not by each wrapper.
+		DeviceRegistry.getInstance().record(scanResult);
 	};
 }
\ No newline at end of file
@@ -30,9 +30,11 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -47,13 +49,117 @@ import java.util.List;
 	 */
 	@NonNull private final ScanCallbackWrapperSet<ScanCallbackWrapperLollipop> wrappers = new ScanCallbackWrapperSet<>();
 
+	/**
+	 * Unfiltered scans running for longer than 30 minutes are downgraded to opportunistic
+	 * on Android Nougat and newer. Rotated scans are restarted before that.
+	 */
+	private static final long SCAN_ROTATION_INTERVAL_MILLIS = 25 * 60 * 1000L;
+
+	/** The minimum interval between resuming scans when Bluetooth is turned on again. */
+	private static final long RESUME_INTERVAL_MILLIS = 250;
+
+	/** A thread running the power save and rotation tasks. */
+	@Nullable private HandlerThread handlerThread;
+	/** The handler of {@link #handlerThread}, or null if the thread is not running. */
+	@Nullable private volatile Handler handler;
+
+	private long powerSaveRestInterval;
+	private long powerSaveScanInterval;
+
+	private final Runnable powerSaveSleepTask = new Runnable() {
+		@Override
+		public void run() {
+			final BluetoothLeScanner scanner = getNativeScanner();
+			if (scanner != null && powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
+				synchronized (wrappers) {
+					for (final ScanCallbackWrapperLollipop wrapper : wrappers.values()) {
+						// Scans without explicit power save settings are not paused.
+						if (!wrapper.paused && !wrapper.suspended && wrapper.nativeScanSettings != null
+								&& wrapper.scanSettings.hasExplicitPowerSave()) {
+							scanner.stopScan(wrapper.nativeCallback);
+							wrapper.paused = true;
+						}
+					}
+				}
+				// The handler is null if all scans were stopped in the meantime.
+				final Handler handler = BluetoothLeScannerImplLollipop.this.handler;
+				if (handler != null)
+					handler.postDelayed(powerSaveScanTask, powerSaveRestInterval);
+			}
+		}
+	};
+
+	private final Runnable powerSaveScanTask = new Runnable() {
+		@Override
+		public void run() {
+			final long delay = resumePausedScans();
+			// The handler is null if all scans were stopped in the meantime.
+			final Handler handler = BluetoothLeScannerImplLollipop.this.handler;
+			if (handler == null)
+				return;
+			if (delay > 0) {
+				// Resuming now would exceed the scan start limit, the scan would not get any results.
+				handler.postDelayed(this, delay);
+				return;
+			}
+			if (powerSaveRestInterval > 0 && powerSaveScanInterval > 0) {
+				handler.postDelayed(powerSaveSleepTask, powerSaveScanInterval);
+			}
+		}
+	};
+
+	/**
+	 * Resumes scans suspended while Bluetooth was off, one at a time, so that a burst of
+	 * starts does not exceed the scan start limit.
+	 */
+	private final Runnable resumeSuspendedScansTask = new Runnable() {
+		@Override
+		public void run() {
+			final BluetoothLeScanner scanner = getNativeScanner();
+			long delay = RESUME_INTERVAL_MILLIS;
+			boolean more = false;
+			synchronized (wrappers) {
+				ScanCallbackWrapperLollipop next = null;
+				for (final ScanCallbackWrapperLollipop wrapper : wrappers.values()) {
+					if (wrapper.suspended) {
+						if (next != null) {
+							more = true;
+							break;
+						}
+						next = wrapper;
+					}
+				}
+				if (next == null)
+					return;
+
+				final ScanStartLimiter limiter = ScanStartLimiter.getInstance();
+				final long now = SystemClock.elapsedRealtime();
+				final long startDelay = limiter.getDelay(1, now);
+				if (scanner == null || startDelay > 0) {
+					delay = Math.max(delay, startDelay);
+					more = true;
+				} else {
+					scanner.startScan(next.nativeScanFilters, next.nativeScanSettings, next.nativeCallback);
+					limiter.recordStart(now);
+					next.nativeScanStartTime = now;
+					next.suspended = false;
+				}
+			}
+			// The handler is null if all scans were stopped in the meantime.
+			final Handler handler = BluetoothLeScannerImplLollipop.this.handler;
+			if (more && handler != null) {
+				handler.postDelayed(this, delay);
+			}
+		}
+	};
+
 	/* package */ BluetoothLeScannerImplLollipop() {}
 
 	@Override
 	/* package */ void startScanInternal(@NonNull final List<ScanFilter> filters,
 										 @NonNull final ScanSettings settings,
 										 @NonNull final ScanCallback callback,
-										 @NonNull final Handler handler) {
+										 @NonNull final ScanCallbackScheduler scheduler) {
 		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
 		final BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
 		if (scanner == null)
@@ -63,6 +169,7 @@ import java.util.List;
 		final boolean offloadedFilteringSupported = adapter.isOffloadedFilteringSupported();
 
 		ScanCallbackWrapperLollipop wrapper;
+		List<ScanCallbackWrapperLollipop> collected;
 
 		synchronized (wrappers) {
 			if (wrappers.contains(callback)) {
@@ -70,34 +177,91 @@ import java.util.List;
 			}
 			final UserScanCallbackWrapper callbackWrapper = new UserScanCallbackWrapper(callback);
 			wrapper = new ScanCallbackWrapperLollipop(offloadedBatchingSupported,
-					offloadedFilteringSupported, filters, settings, callbackWrapper, handler);
+					offloadedFilteringSupported, filters, settings, callbackWrapper, scheduler);
+			collected = wrappers.purge();
 			wrappers.add(wrapper);
 		}
+		stopNativeScans(collected);
 
 		final android.bluetooth.le.ScanSettings nativeScanSettings = toNativeScanSettings(adapter, settings, false);
 		List<android.bluetooth.le.ScanFilter> nativeScanFilters = null;
 		if (!filters.isEmpty() && offloadedFilteringSupported && settings.getUseHardwareFilteringIfSupported())
 			nativeScanFilters = toNativeScanFilters(filters);
 
+		synchronized (wrappers) {
+			// Kept to resume the scan after power save rest intervals.
+			wrapper.nativeScanFilters = nativeScanFilters;
+			wrapper.nativeScanSettings = nativeScanSettings;
+		}
+
 		scanner.startScan(nativeScanFilters, nativeScanSettings, wrapper.nativeCallback);
+		final long now = SystemClock.elapsedRealtime();
+		ScanStartLimiter.getInstance().recordStart(now);
+
+		if (settings.hasExplicitPowerSave()) {
+			setPowerSaveSettings();
+		}
+
+		if (settings.getUnfilteredScanRotation() && Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+				&& (nativeScanFilters == null || nativeScanFilters.isEmpty())) {
+			final ScanCallbackWrapperLollipop rotatedWrapper = wrapper;
+			synchronized (wrappers) {
+				wrapper.nativeScanStartTime = now;
+				wrapper.rotationTask = () -> rotateScan(rotatedWrapper);
+			}
+			getHandler().postDelayed(wrapper.rotationTask, SCAN_ROTATION_INTERVAL_MILLIS);
+		}
 	}
 
 	@Override
 	/* package */ void stopScanInternal(@NonNull final ScanCallback callback) {
+		boolean shouldStop;
 		ScanCallbackWrapperLollipop wrapper;
+		List<ScanCallbackWrapperLollipop> stopped;
 		synchronized (wrappers) {
 			wrapper = wrappers.remove(callback);
+			// Scans of wrappers whose user callbacks were collected are stopped as well.
+			stopped = wrappers.purge();
+			shouldStop = wrappers.isEmpty();
 		}
-		if (wrapper == null)
+		if (wrapper != null)
+			stopped.add(wrapper);
+		if (stopped.isEmpty())
 			return;
 
-		wrapper.close();
+		stopNativeScans(stopped);
+
+		if (shouldStop) {
+			quitHandler();
+		}
+	}
+
+	/**
+	 * Closes the given wrappers, which must have been removed from the set, and stops
+	 * their native scans.
+	 */
+	private void stopNativeScans(@NonNull final List<ScanCallbackWrapperLollipop> stopped) {
+		if (stopped.isEmpty())
+			return;
+
+		final BluetoothLeScanner scanner = getNativeScanner();
+		final Handler handler = this.handler;
+		boolean explicitPowerSave = false;
+		for (final ScanCallbackWrapperLollipop wrapper : stopped) {
+			wrapper.close();
 
-		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-		if (adapter != null) {
-			final BluetoothLeScanner scanner = adapter.getBluetoothLeScanner();
 			if (scanner != null)
 				scanner.stopScan(wrapper.nativeCallback);
+
+			final Runnable rotationTask = wrapper.rotationTask;
+			if (rotationTask != null && handler != null) {
+				handler.removeCallbacks(rotationTask);
+			}
+			explicitPowerSave |= wrapper.scanSettings.hasExplicitPowerSave();
+		}
+
+		if (explicitPowerSave) {
+			setPowerSaveSettings();
 		}
 	}
 
@@ -160,6 +324,219 @@ import java.util.List;
 		}
 	}
 
+	@Nullable
+	@Override
+	/* package */ ScanCallbackWrapper getScanCallbackWrapper(@NonNull final ScanCallback callback) {
+		synchronized (wrappers) {
+			return wrappers.get(callback);
+		}
+	}
+
+	@Override
+	/* package */ boolean restartScanInternal(@NonNull final ScanCallbackWrapper wrapper) {
+		// Scans with a PendingIntent are run by the system.
+		if (!(wrapper instanceof ScanCallbackWrapperLollipop))
+			return false;
+		final ScanCallbackWrapperLollipop lollipopWrapper = (ScanCallbackWrapperLollipop) wrapper;
+
+		final BluetoothLeScanner scanner = getNativeScanner();
+		if (scanner == null)
+			return false;
+
+		synchronized (wrappers) {
+			if (lollipopWrapper.paused || lollipopWrapper.suspended
+					|| lollipopWrapper.nativeScanSettings == null)
+				return false;
+
+			final ScanStartLimiter limiter = ScanStartLimiter.getInstance();
+			final long now = SystemClock.elapsedRealtime();
+			if (limiter.getDelay(1, now) > 0)
+				return false;
+
+			scanner.stopScan(lollipopWrapper.nativeCallback);
+			scanner.startScan(lollipopWrapper.nativeScanFilters, lollipopWrapper.nativeScanSettings,
+					lollipopWrapper.nativeCallback);
+			limiter.recordStart(now);
+			lollipopWrapper.nativeScanStartTime = now;
+		}
+		return true;
+	}
+
+	@Override
+	/* package */ void suspendScansInternal() {
+		final Handler handler = this.handler;
+		if (handler != null) {
+			handler.removeCallbacks(resumeSuspendedScansTask);
+		}
+
+		final BluetoothLeScanner scanner = getNativeScanner();
+		synchronized (wrappers) {
+			for (final ScanCallbackWrapperLollipop wrapper : wrappers.values()) {
+				if (wrapper.suspended || wrapper.nativeScanSettings == null)
+					continue;
+				// The scanner may not be available any more if Bluetooth is already off.
+				if (!wrapper.paused && scanner != null)
+					scanner.stopScan(wrapper.nativeCallback);
+				wrapper.paused = false;
+				wrapper.suspended = true;
+			}
+		}
+	}
+
+	@Override
+	/* package */ void resumeScansInternal() {
+		synchronized (wrappers) {
+			if (wrappers.isEmpty())
+				return;
+		}
+		final Handler handler = getHandler();
+		handler.removeCallbacks(resumeSuspendedScansTask);
+		handler.post(resumeSuspendedScansTask);
+	}
+
+	/**
+	 * Restarts the native scan of the given wrapper if it has been running for
+	 * {@link #SCAN_ROTATION_INTERVAL_MILLIS}, and schedules the next rotation.
+	 * The scan is started immediately after being stopped, to keep the gap short.
+	 */
+	private void rotateScan(@NonNull final ScanCallbackWrapperLollipop wrapper) {
+		final BluetoothLeScanner scanner = getNativeScanner();
+		final long delay;
+		synchronized (wrappers) {
+			// The scan may have been stopped in the meantime.
+			if (wrappers.get(wrapper.scanCallback) != wrapper)
+				return;
+
+			final long now = SystemClock.elapsedRealtime();
+			final long elapsed = now - wrapper.nativeScanStartTime;
+			final ScanStartLimiter limiter = ScanStartLimiter.getInstance();
+			final long startDelay = limiter.getDelay(1, now);
+			if (scanner == null || wrapper.paused || wrapper.suspended) {
+				// The scan will be rotated when it's running again.
+				delay = SCAN_ROTATION_INTERVAL_MILLIS;
+			} else if (elapsed < SCAN_ROTATION_INTERVAL_MILLIS) {
+				// The scan was restarted in the meantime, e.g. after a power save rest interval.
+				delay = SCAN_ROTATION_INTERVAL_MILLIS - elapsed;
+			} else if (startDelay > 0) {
+				delay = startDelay;
+			} else {
+				scanner.stopScan(wrapper.nativeCallback);
+				scanner.startScan(wrapper.nativeScanFilters, wrapper.nativeScanSettings, wrapper.nativeCallback);
+				limiter.recordStart(now);
+				wrapper.nativeScanStartTime = now;
+				wrapper.onNativeScanRotated(now);
+				delay = SCAN_ROTATION_INTERVAL_MILLIS;
+			}
+		}
+		// The handler is null if all scans were stopped in the meantime. getHandler() would
+		// start a new thread that is never quit.
+		final Handler handler = this.handler;
+		if (handler != null)
+			handler.postDelayed(wrapper.rotationTask, delay);
+	}
+
+	@NonNull
+	private synchronized Handler getHandler() {
+		if (handlerThread == null) {
+			handlerThread = new HandlerThread(BluetoothLeScannerImplLollipop.class.getName());
+			handlerThread.start();
+			handler = new Handler(handlerThread.getLooper());
+		}
+		//noinspection ConstantConditions
+		return handler;
+	}
+
+	private synchronized void quitHandler() {
+		if (handlerThread != null) {
+			handlerThread.quitSafely();
+			handlerThread = null;
+			handler = null;
+		}
+	}
+
+	@Nullable
+	private static BluetoothLeScanner getNativeScanner() {
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		return adapter != null ? adapter.getBluetoothLeScanner() : null;
+	}
+
+	/**
+	 * This method goes through registered callbacks and sets the power rest and scan intervals
+	 * to next lowest value. Only callbacks with power save set explicitly using
+	 * {@link ScanSettings.Builder#setPowerSave(long, long)} are taken into account.
+	 */
+	private void setPowerSaveSettings() {
+		long minRest = Long.MAX_VALUE, minScan = Long.MAX_VALUE;
+		synchronized (wrappers) {
+			for (final ScanCallbackWrapperLollipop wrapper : wrappers.values()) {
+				final ScanSettings settings = wrapper.scanSettings;
+				if (settings.hasExplicitPowerSave()) {
+					if (minRest > settings.getPowerSaveRest()) {
+						minRest = settings.getPowerSaveRest();
+					}
+					if (minScan > settings.getPowerSaveScan()) {
+						minScan = settings.getPowerSaveScan();
+					}
+				}
+			}
+		}
+		if (minRest < Long.MAX_VALUE && minScan < Long.MAX_VALUE) {
+			powerSaveRestInterval = minRest;
+			powerSaveScanInterval = minScan;
+			final Handler handler = getHandler();
+			handler.removeCallbacks(powerSaveScanTask);
+			handler.removeCallbacks(powerSaveSleepTask);
+			// Resume paused scans, if any, and start a new cycle.
+			handler.post(powerSaveScanTask);
+		} else {
+			powerSaveRestInterval = powerSaveScanInterval = 0;
+			final Handler handler = this.handler;
+			if (handler != null) {
+				handler.removeCallbacks(powerSaveScanTask);
+				handler.removeCallbacks(powerSaveSleepTask);
+				// Scans that were paused and are still registered must not remain paused.
+				handler.post(powerSaveScanTask);
+			}
+		}
+	}
+
+	/**
+	 * Starts the native scans paused in a power save rest interval. Only as many scans as
+	 * the scan start limit allows are started, the others remain paused.
+	 *
+	 * @return 0 if all scans were resumed, or the time in milliseconds after which
+	 * the remaining ones can be resumed without exceeding the scan start limit.
+	 */
+	private long resumePausedScans() {
+		final BluetoothLeScanner scanner = getNativeScanner();
+		if (scanner == null)
+			return 0;
+
+		synchronized (wrappers) {
+			final List<ScanCallbackWrapperLollipop> paused = new ArrayList<>();
+			for (final ScanCallbackWrapperLollipop wrapper : wrappers.values()) {
+				if (wrapper.paused)
+					paused.add(wrapper);
+			}
+			if (paused.isEmpty())
+				return 0;
+
+			final ScanStartLimiter limiter = ScanStartLimiter.getInstance();
+			final long now = SystemClock.elapsedRealtime();
+			final int available = Math.min(paused.size(), limiter.getAvailableStarts(now));
+			for (int i = 0; i < available; i++) {
+				final ScanCallbackWrapperLollipop wrapper = paused.get(i);
+				scanner.startScan(wrapper.nativeScanFilters, wrapper.nativeScanSettings, wrapper.nativeCallback);
+				limiter.recordStart(now);
+				wrapper.nativeScanStartTime = now;
+				wrapper.paused = false;
+			}
+			if (available < paused.size())
+				return Math.max(1, limiter.getDelay(1, now));
+		}
+		return 0;
+	}
+
 	@NonNull
 	/* package */ android.bluetooth.le.ScanSettings toNativeScanSettings(@NonNull final BluetoothAdapter adapter,
 																		 @NonNull final ScanSettings settings,
@@ -228,15 +605,26 @@ import java.util.List;
 	}
 
 	/* package */ static class ScanCallbackWrapperLollipop extends ScanCallbackWrapper {
+		/** Native filters and settings the scan was started with, to resume it after pause. */
+		@Nullable private List<android.bluetooth.le.ScanFilter> nativeScanFilters;
+		@Nullable private android.bluetooth.le.ScanSettings nativeScanSettings;
+		/** Whether the native scan is stopped for a power save rest interval. */
+		private boolean paused;
+		/** Whether the native scan is stopped because Bluetooth is off. */
+		private boolean suspended;
+		/** The time the native scan was last started. */
+		private long nativeScanStartTime;
+		/** A task rotating the unfiltered native scan, or null if the scan is not rotated. */
+		@Nullable private Runnable rotationTask;
 
 		private ScanCallbackWrapperLollipop(final boolean offloadedBatchingSupported,
 											final boolean offloadedFilteringSupported,
 											@NonNull final List<ScanFilter> filters,
 											@NonNull final ScanSettings settings,
 											@NonNull final ScanCallback callback,
-											@NonNull final Handler handler) {
+											@NonNull final ScanCallbackScheduler scheduler) {
 			super(offloadedBatchingSupported, offloadedFilteringSupported,
-					filters, settings, callback, handler);
+					filters, settings, callback, scheduler);
 		}
 
 		@NonNull
@@ -245,17 +633,17 @@ import java.util.List;
 
 			@Override
 			public void onScanResult(final int callbackType, final android.bluetooth.le.ScanResult nativeScanResult) {
-				handler.post(() -> {
-					final BluetoothLeScannerImplLollipop scannerImpl =
-							(BluetoothLeScannerImplLollipop) BluetoothLeScannerCompat.getScanner();
-					final ScanResult result = scannerImpl.fromNativeScanResult(nativeScanResult);
-					handleScanResult(callbackType, result);
-				});
+				final BluetoothLeScannerImplLollipop scannerImpl =
+						(BluetoothLeScannerImplLollipop) BluetoothLeScannerCompat.getScanner();
+				final ScanResult result = scannerImpl.fromNativeScanResult(nativeScanResult);
+				enqueueScanResult(callbackType, result);
+				if (callbackType != ScanSettings.CALLBACK_TYPE_MATCH_LOST)
+					DeviceRegistry.getInstance().record(result);
 			}
 
 			@Override
 			public void onBatchScanResults(final List<android.bluetooth.le.ScanResult> nativeScanResults) {
-				handler.post(() -> {
+				scheduler.post(() -> {
 					// On several phones the onBatchScanResults is called twice for every batch.
 					// Skip the second call if came to early.
 					final long now = SystemClock.elapsedRealtime();
@@ -268,12 +656,15 @@ import java.util.List;
 							(BluetoothLeScannerImplLollipop) BluetoothLeScannerCompat.getScanner();
 					final List<ScanResult> results = scannerImpl.fromNativeScanResults(nativeScanResults);
 					handleScanResults(results);
+					final DeviceRegistry registry = DeviceRegistry.getInstance();
+					for (final ScanResult result : results)
+						registry.record(result);
 				});
 			}
 
 			@Override
 			public void onScanFailed(final int errorCode) {
-				handler.post(() -> {
+				scheduler.post(() -> {
 					// We were able to determine offloaded batching and filtering before we started scan,
 					// but there is no method checking if callback types FIRST_MATCH and MATCH_LOST
 					// are supported. We get an error here it they are not.
@@ -286,14 +677,21 @@ import java.util.List;
 						// Let's try to do pretty much the same in the code.
 						scanSettings.disableUseHardwareCallbackTypes();
 
+						// The scan has to be registered again with the user callback, not with
+						// the wrapper of it, so that it can be stopped by the user.
+						final ScanCallback userCallback = scanCallback instanceof UserScanCallbackWrapper ?
+								((UserScanCallbackWrapper) scanCallback).get() : scanCallback;
 						final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
 						try {
 							scanner.stopScan(scanCallback);
 						} catch (final Exception e) {
 							// Ignore
 						}
+						// The user callback was garbage collected, there is nothing to restart.
+						if (userCallback == null)
+							return;
 						try {
-							scanner.startScanInternal(filters, scanSettings, scanCallback, handler);
+							scanner.startScanInternal(filters, scanSettings, userCallback, scheduler);
 						} catch (final Exception e) {
 							// Ignore
 						}
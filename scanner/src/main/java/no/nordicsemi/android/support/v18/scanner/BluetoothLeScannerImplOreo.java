@@ -121,14 +121,18 @@ import java.util.List;
 		final PendingIntent pendingIntent = createStoppingPendingIntent(context, requestCode);
 		scanner.stopScan(pendingIntent);
 
+		final PendingIntentExecutorWrapper wrapper;
 		synchronized (wrappers) {
 			// Do not remove the key, just set the value to null.
 			// Based on that we will know that scanning has been stopped.
 			// This is used to discard scanning results delivered after the scan was stopped.
 			// Unfortunately, the callbackIntent will have to be kept and won't he removed,
 			// despite the fact that reports will eventually stop being broadcast.
-			wrappers.put(callbackIntent, null);
+			wrapper = wrappers.put(callbackIntent, null);
 		}
+		// Results received before the scan was stopped may be waiting to be coalesced.
+		if (wrapper != null)
+			wrapper.executor.flushPendingResults();
 	}
 
 	/**
@@ -158,11 +162,8 @@ import java.util.List;
 		// Only native classes may be used here, as they are delivered to another application.
 		intent.putParcelableArrayListExtra(PendingIntentReceiver.EXTRA_FILTERS, toNativeScanFilters(filters));
 		intent.putExtra(PendingIntentReceiver.EXTRA_SETTINGS, toNativeScanSettings(adapter, settings, true));
-		intent.putExtra(PendingIntentReceiver.EXTRA_USE_HARDWARE_BATCHING, settings.getUseHardwareBatchingIfSupported());
-		intent.putExtra(PendingIntentReceiver.EXTRA_USE_HARDWARE_FILTERING, settings.getUseHardwareFilteringIfSupported());
-		intent.putExtra(PendingIntentReceiver.EXTRA_USE_HARDWARE_CALLBACK_TYPES, settings.getUseHardwareCallbackTypesIfSupported());
-		intent.putExtra(PendingIntentReceiver.EXTRA_MATCH_MODE, settings.getMatchMode());
-		intent.putExtra(PendingIntentReceiver.EXTRA_NUM_OF_MATCHES, settings.getNumOfMatches());
+		// Compat only settings are marshalled, so that the other application sees only bytes.
+		intent.putExtra(PendingIntentReceiver.EXTRA_COMPAT_SETTINGS, settings.marshall());
 
 		int flags = PendingIntent.FLAG_UPDATE_CURRENT;
 		// Mutable flag has to be set explicitly on Android 12+. Before PendingIntent was mutable by default.
@@ -218,27 +219,13 @@ import java.util.List;
 	}
 
 	@NonNull
-	/* package */ ScanSettings fromNativeScanSettings(@NonNull final android.bluetooth.le.ScanSettings settings,
-													  final boolean useHardwareBatchingIfSupported,
-													  final boolean useHardwareFilteringIfSupported,
-													  final boolean useHardwareCallbackTypesIfSupported,
-													  final long matchLostDeviceTimeout,
-													  final long matchLostTaskInterval,
-													  final int matchMode, final int numOfMatches) {
+	/* package */ ScanSettings fromNativeScanSettings(@NonNull final android.bluetooth.le.ScanSettings settings) {
 		final ScanSettings.Builder builder = new ScanSettings.Builder()
 				.setLegacy(settings.getLegacy())
 				.setPhy(settings.getPhy())
 				.setCallbackType(settings.getCallbackType())
 				.setScanMode(settings.getScanMode())
-				.setReportDelay(settings.getReportDelayMillis())
-				.setUseHardwareBatchingIfSupported(useHardwareBatchingIfSupported)
-				.setUseHardwareFilteringIfSupported(useHardwareFilteringIfSupported)
-				.setUseHardwareCallbackTypesIfSupported(useHardwareCallbackTypesIfSupported)
-				.setMatchOptions(matchLostDeviceTimeout, matchLostTaskInterval)
-				// Those 2 values are not accessible from the native ScanSettings.
-				// They need to be transferred separately in intent extras.
-				.setMatchMode(matchMode).setNumOfMatches(numOfMatches);
-
+				.setReportDelay(settings.getReportDelayMillis());
 		return builder.build();
 	}
 
@@ -291,8 +278,15 @@ import java.util.List;
 									 @NonNull final ScanSettings settings,
 									 @NonNull final PendingIntentExecutor executor) {
 			super(offloadedBatchingSupported, offloadedFilteringSupported, filters, settings,
-					executor, new Handler());
+					executor, ScanCallbackScheduler.of(new Handler()));
 			this.executor = executor;
 		}
+
+		@Override
+		boolean coalesceMatchFoundNotifications() {
+			// The executor has a context only while the received broadcast is being handled,
+			// so the notification cannot be postponed.
+			return false;
+		}
 	}
 }
@@ -0,0 +1,266 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.util.LongSparseArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A process-wide table of devices found by all scans started with
+ * {@link BluetoothLeScannerCompat}. Devices are kept until they were not seen for
+ * {@link ScanSettings#MATCH_LOST_DEVICE_TIMEOUT_DEFAULT}.
+ * <p>
+ * Devices are indexed by the address converted to a long. Entries are also linked in
+ * the order they were seen, from the most recent one, so that lost devices can be removed
+ * from the end of the list without iterating over the whole table.
+ * <p>
+ * The registry is disabled until {@link #enable()} is called, so that scans of apps that
+ * never query it do not pay for recording every packet.
+ * <p>
+ * Results are recorded without blocking the thread delivering them. If the table is being
+ * read at that time, the result is queued and added by the next call that gets the lock.
+ */
+/* package */ class DeviceRegistry {
+	private static final long DEVICE_TIMEOUT_NANOS = ScanSettings.MATCH_LOST_DEVICE_TIMEOUT_DEFAULT * 1000000L;
+
+	@NonNull private static final DeviceRegistry instance = new DeviceRegistry();
+
+	private volatile boolean enabled;
+
+	/** Guards the table. Recording threads never wait for it. */
+	@NonNull private final ReentrantLock lock = new ReentrantLock();
+	/** Results recorded while the lock was held by another thread. */
+	@NonNull private final Queue<ScanResult> pending = new ConcurrentLinkedQueue<>();
+	@NonNull private final LongSparseArray<Entry> entries = new LongSparseArray<>();
+	/** The most recently seen device. */
+	@Nullable private Entry head;
+	/** The least recently seen device. */
+	@Nullable private Entry tail;
+	/** Counter of unique devices, created when requested for the first time. */
+	@Nullable private UniqueDeviceCounter uniqueDeviceCounter;
+
+	@NonNull
+	static DeviceRegistry getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Enables recording. Devices found before are not known to the registry.
+	 */
+	void enable() {
+		enabled = true;
+	}
+
+	/**
+	 * Records the scan result. When multiple scans are running, the same packet may be
+	 * received by each of them. Such duplicates are recognized by the timestamp and ignored.
+	 * <p>
+	 * This method does not block. It may be called from any thread.
+	 */
+	void record(@NonNull final ScanResult result) {
+		if (!enabled)
+			return;
+		pending.offer(result);
+		if (lock.tryLock()) {
+			try {
+				addPendingResults();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Adds the results recorded so far to the table. Must be called with the lock held.
+	 */
+	private void addPendingResults() {
+		ScanResult result;
+		while ((result = pending.poll()) != null)
+			add(result);
+	}
+
+	private void add(@NonNull final ScanResult result) {
+		final long key = toLong(result.getDevice().getAddress());
+		final long now = result.getTimestampNanos();
+
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			entry = new Entry(now);
+			entries.put(key, entry);
+		} else {
+			if (now <= entry.lastSeenNanos)
+				return;
+			unlink(entry);
+		}
+		entry.update(result);
+		linkFirst(entry);
+		if (uniqueDeviceCounter != null)
+			uniqueDeviceCounter.add(key, now);
+
+		removeLostDevices(now);
+	}
+
+	/**
+	 * Returns a snapshot of all devices seen recently, starting from the most recently seen one.
+	 */
+	@NonNull
+	List<ScannedDevice> getDevicesInRange(final long now) {
+		lock.lock();
+		try {
+			addPendingResults();
+			removeLostDevices(now);
+			final List<ScannedDevice> devices = new ArrayList<>(entries.size());
+			for (Entry entry = head; entry != null; entry = entry.next)
+				devices.add(entry.toScannedDevice());
+			return devices;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the device with given address, or null if it wasn't seen recently.
+	 */
+	@Nullable
+	ScannedDevice getDevice(@NonNull final String address, final long now) {
+		lock.lock();
+		try {
+			addPendingResults();
+			removeLostDevices(now);
+			final Entry entry = entries.get(toLong(address));
+			return entry != null ? entry.toScannedDevice() : null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@NonNull
+	UniqueDeviceCounter getUniqueDeviceCounter() {
+		lock.lock();
+		try {
+			if (uniqueDeviceCounter == null)
+				uniqueDeviceCounter = new UniqueDeviceCounter();
+			return uniqueDeviceCounter;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	void clear() {
+		lock.lock();
+		try {
+			pending.clear();
+			entries.clear();
+			head = tail = null;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void removeLostDevices(final long now) {
+		while (tail != null && now - tail.lastSeenNanos > DEVICE_TIMEOUT_NANOS) {
+			final Entry entry = tail;
+			unlink(entry);
+			entries.remove(toLong(entry.lastResult.getDevice().getAddress()));
+		}
+	}
+
+	private void linkFirst(@NonNull final Entry entry) {
+		entry.previous = null;
+		entry.next = head;
+		if (head != null)
+			head.previous = entry;
+		head = entry;
+		if (tail == null)
+			tail = entry;
+	}
+
+	private void unlink(@NonNull final Entry entry) {
+		if (entry.previous != null)
+			entry.previous.next = entry.next;
+		else
+			head = entry.next;
+		if (entry.next != null)
+			entry.next.previous = entry.previous;
+		else
+			tail = entry.previous;
+		entry.previous = entry.next = null;
+	}
+
+	/**
+	 * Converts a Bluetooth address in format "01:23:45:67:89:AB" to a long.
+	 */
+	static long toLong(@NonNull final String address) {
+		long value = 0;
+		for (int i = 0; i < address.length(); i++) {
+			final int digit = Character.digit(address.charAt(i), 16);
+			if (digit >= 0)
+				value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	private static final class Entry {
+		@Nullable private Entry previous;
+		@Nullable private Entry next;
+
+		private final long firstSeenNanos;
+		private long lastSeenNanos;
+		private long packetCount;
+		private long rssiSum;
+		private int rssiMin = Integer.MAX_VALUE;
+		private int rssiMax = Integer.MIN_VALUE;
+		@SuppressWarnings("NotNullFieldNotInitialized")
+		@NonNull private ScanResult lastResult;
+
+		// Quartiles of intervals between received packets, in milliseconds. They are created
+		// with the second packet, as most devices in a crowded area are seen only once.
+		@Nullable private StreamingQuantile intervalLowerQuartile;
+		@Nullable private StreamingQuantile intervalMedian;
+		@Nullable private StreamingQuantile intervalUpperQuartile;
+
+		private Entry(final long firstSeenNanos) {
+			this.firstSeenNanos = firstSeenNanos;
+		}
+
+		private void update(@NonNull final ScanResult result) {
+			final int rssi = result.getRssi();
+			if (packetCount > 0) {
+				final double interval = (result.getTimestampNanos() - lastSeenNanos) / 1000000.0;
+				if (intervalMedian == null) {
+					intervalLowerQuartile = new StreamingQuantile(0.25);
+					intervalMedian = new StreamingQuantile(0.5);
+					intervalUpperQuartile = new StreamingQuantile(0.75);
+				}
+				//noinspection ConstantConditions
+				intervalLowerQuartile.add(interval);
+				intervalMedian.add(interval);
+				intervalUpperQuartile.add(interval);
+			}
+			lastSeenNanos = result.getTimestampNanos();
+			packetCount++;
+			rssiSum += rssi;
+			rssiMin = Math.min(rssiMin, rssi);
+			rssiMax = Math.max(rssiMax, rssi);
+			lastResult = result;
+		}
+
+		@NonNull
+		private ScannedDevice toScannedDevice() {
+			float median = Float.NaN, jitter = Float.NaN;
+			if (intervalMedian != null) {
+				median = (float) intervalMedian.getQuantile();
+				//noinspection ConstantConditions
+				jitter = (float) (intervalUpperQuartile.getQuantile() - intervalLowerQuartile.getQuantile());
+			}
+			return new ScannedDevice(lastResult, firstSeenNanos, packetCount,
+					(float) rssiSum / packetCount, rssiMin, rssiMax, median, jitter);
+		}
+	}
+}
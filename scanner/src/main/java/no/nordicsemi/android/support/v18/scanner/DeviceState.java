@@ -0,0 +1,34 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A state kept for each device while scanning, in a map in access-order by device address.
+ */
+/* package */ abstract class DeviceState {
+	/** The timestamp of the last packet received from the device. */
+	long lastSeenNanos;
+
+	/**
+	 * Forgets the device seen least recently if it has not been seen for longer than the given
+	 * timeout, so that the map does not grow indefinitely. Called before a new device is added,
+	 * this keeps the map at the size of the number of devices in range.
+	 *
+	 * @param devices      device states in access-order, so the first entry is the device
+	 *                     seen least recently.
+	 * @param nowNanos     the timestamp of the current packet.
+	 * @param timeoutNanos the time after which a device is forgotten.
+	 */
+	static void forgetEldest(@NonNull final LinkedHashMap<String, ? extends DeviceState> devices,
+							 final long nowNanos, final long timeoutNanos) {
+		final Iterator<? extends DeviceState> iterator = devices.values().iterator();
+		if (iterator.hasNext()) {
+			final DeviceState eldest = iterator.next();
+			if (eldest.lastSeenNanos < nowNanos - timeoutNanos)
+				iterator.remove();
+		}
+	}
+}
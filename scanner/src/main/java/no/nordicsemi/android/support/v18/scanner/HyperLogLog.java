@@ -0,0 +1,163 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A HyperLogLog sketch estimating the number of unique devices, using 2<sup>precision</sup>
+ * bytes of memory regardless of the number of devices. The standard error of the estimate
+ * is about 1.04 / sqrt(2<sup>precision</sup>), e.g. 1.6% for precision 12.
+ * <p>
+ * Sketches with the same precision can be merged, for example to combine counts from
+ * multiple phones. Use {@link #toByteArray()} and {@link #fromByteArray(byte[])} to transfer
+ * them.
+ * <p>
+ * This class is not thread safe.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class HyperLogLog {
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 16;
+
+	private static final byte SERIAL_VERSION = 1;
+
+	private final int precision;
+	@NonNull private final byte[] registers;
+
+	/**
+	 * Creates an empty sketch.
+	 *
+	 * @param precision number of bits used to select a register, in range
+	 *                  [{@link #MIN_PRECISION}, {@link #MAX_PRECISION}].
+	 * @throws IllegalArgumentException If the precision is out of range.
+	 */
+	public HyperLogLog(final int precision) {
+		if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("precision must be in range [" +
+					MIN_PRECISION + ", " + MAX_PRECISION + "]");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Returns a sketch read from the array created with {@link #toByteArray()}.
+	 *
+	 * @throws IllegalArgumentException If the array does not contain a valid sketch.
+	 */
+	@NonNull
+	public static HyperLogLog fromByteArray(@NonNull final byte[] bytes) {
+		if (bytes.length < 2 || bytes[0] != SERIAL_VERSION) {
+			throw new IllegalArgumentException("Invalid sketch");
+		}
+		final HyperLogLog sketch = new HyperLogLog(bytes[1]);
+		if (bytes.length != 2 + sketch.registers.length) {
+			throw new IllegalArgumentException("Invalid sketch length");
+		}
+		System.arraycopy(bytes, 2, sketch.registers, 0, sketch.registers.length);
+		return sketch;
+	}
+
+	public int getPrecision() {
+		return precision;
+	}
+
+	/**
+	 * Adds a device with the given Bluetooth address, in format "01:23:45:67:89:AB".
+	 */
+	public void add(@NonNull final String address) {
+		add(DeviceRegistry.toLong(address));
+	}
+
+	/**
+	 * Adds a device with the given Bluetooth address, converted to a long.
+	 */
+	public void add(final long address) {
+		final long hash = mix(address);
+		final int index = (int) (hash >>> (64 - precision));
+		// The rank is the position of the first 1 bit in the remaining bits. The remaining bits
+		// are padded with a 1, so that the rank is at most 64 - precision + 1.
+		final long remaining = (hash << precision) | (1L << (precision - 1));
+		final byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+		if (registers[index] < rank)
+			registers[index] = rank;
+	}
+
+	/**
+	 * Adds all devices from the other sketch to this one.
+	 *
+	 * @throws IllegalArgumentException If the sketches have different precisions.
+	 */
+	public void merge(@NonNull final HyperLogLog other) {
+		if (other.precision != precision) {
+			throw new IllegalArgumentException("Precision mismatch: " + precision + " vs " + other.precision);
+		}
+		for (int i = 0; i < registers.length; i++) {
+			if (registers[i] < other.registers[i])
+				registers[i] = other.registers[i];
+		}
+	}
+
+	/**
+	 * Returns the estimated number of unique devices added.
+	 */
+	public long estimate() {
+		final int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (final byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0)
+				zeros++;
+		}
+		final double estimate = alpha(m) * m * m / sum;
+		// Small range correction
+		if (estimate <= 2.5 * m && zeros > 0)
+			return Math.round(m * Math.log((double) m / zeros));
+		return Math.round(estimate);
+	}
+
+	public void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	/**
+	 * Returns the sketch as a byte array, which can be read using {@link #fromByteArray(byte[])}.
+	 */
+	@NonNull
+	public byte[] toByteArray() {
+		final byte[] bytes = new byte[2 + registers.length];
+		bytes[0] = SERIAL_VERSION;
+		bytes[1] = (byte) precision;
+		System.arraycopy(registers, 0, bytes, 2, registers.length);
+		return bytes;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "HyperLogLog{" + "precision=" + precision + ", estimate=" + estimate() + '}';
+	}
+
+	private static double alpha(final int m) {
+		switch (m) {
+			case 16: return 0.673;
+			case 32: return 0.697;
+			case 64: return 0.709;
+			default: return 0.7213 / (1 + 1.079 / m);
+		}
+	}
+
+	/**
+	 * The 64-bit finalizer of MurmurHash3, spreading the bits of the address.
+	 */
+	private static long mix(long value) {
+		value ^= value >>> 33;
+		value *= 0xff51afd7ed558ccdL;
+		value ^= value >>> 33;
+		value *= 0xc4ceb9fe1a85ec53L;
+		value ^= value >>> 33;
+		return value;
+	}
+}
@@ -4,6 +4,8 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.os.Parcelable;
 import android.os.SystemClock;
 
@@ -29,6 +31,24 @@ import androidx.annotation.Nullable;
     private long lastBatchTimestamp;
     private final long reportDelay;
 
+	/** An estimated size of a result without the scan record, in bytes. */
+	private static final int RESULT_OVERHEAD_BYTES = 100;
+
+	// Coalescing limits, see ScanSettings.Builder#setPendingIntentCoalescing(int, int, long).
+	private final int coalescingMaxResults;
+	private final int coalescingMaxBytes;
+	private final long coalescingMaxLatency;
+	/** Results with {@link ScanSettings#CALLBACK_TYPE_ALL_MATCHES} waiting to be sent. */
+	@NonNull private final ArrayList<Parcelable> pendingResults = new ArrayList<>();
+	private int pendingBytes;
+	/**
+	 * The context used to send pending results when the latency limit is reached. The temporary
+	 * context is released after the broadcast is handled, so the application context is kept.
+	 */
+	@Nullable private Context pendingContext;
+	@Nullable private Handler handler;
+	@NonNull private final Runnable flushTask = this::flushPendingResults;
+
     /**
      * Creates the {@link PendingIntent} executor that will be used from a
      * {@link android.content.BroadcastReceiver}. The {@link Context} may change in every
@@ -45,6 +65,9 @@ import androidx.annotation.Nullable;
 						  @NonNull final ScanSettings settings) {
 		this.callbackIntent = callbackIntent;
 		this.reportDelay = settings.getReportDelayMillis();
+		this.coalescingMaxResults = settings.getCoalescingMaxResults();
+		this.coalescingMaxBytes = settings.getCoalescingMaxBytes();
+		this.coalescingMaxLatency = settings.getCoalescingMaxLatencyMillis();
 	}
 
 	/**
@@ -61,6 +84,9 @@ import androidx.annotation.Nullable;
 						  @NonNull final Service service) {
 		this.callbackIntent = callbackIntent;
 		this.reportDelay = settings.getReportDelayMillis();
+		this.coalescingMaxResults = settings.getCoalescingMaxResults();
+		this.coalescingMaxBytes = settings.getCoalescingMaxBytes();
+		this.coalescingMaxLatency = settings.getCoalescingMaxLatencyMillis();
 		this.service = service;
 	}
 
@@ -74,6 +100,15 @@ import androidx.annotation.Nullable;
 		if (context == null)
 			return;
 
+		if (coalescingMaxResults > 0) {
+			if (callbackType == ScanSettings.CALLBACK_TYPE_ALL_MATCHES) {
+				coalesce(context, result);
+				return;
+			}
+			// Keep the order of results.
+			flushPendingResults();
+		}
+
 		try {
 			final Intent extrasIntent = new Intent();
 			extrasIntent.putExtra(BluetoothLeScannerCompat.EXTRA_CALLBACK_TYPE, callbackType);
@@ -85,6 +120,93 @@ import androidx.annotation.Nullable;
 		}
 	}
 
+	/**
+	 * Adds the result to pending results. They are sent when the count or size limit is
+	 * reached, or when the oldest of them waited for the maximum latency.
+	 */
+	private void coalesce(@NonNull final Context context, @NonNull final ScanResult result) {
+		final ScanRecord record = result.getScanRecord();
+		final byte[] bytes = record != null ? record.getBytes() : null;
+		final int size = RESULT_OVERHEAD_BYTES + (bytes != null ? bytes.length : 0);
+
+		ArrayList<Parcelable> results = null;
+		Context sendingContext = null;
+		synchronized (pendingResults) {
+			// Send pending results first if this one would exceed the size limit.
+			if (!pendingResults.isEmpty() && pendingBytes + size > coalescingMaxBytes) {
+				results = new ArrayList<>(pendingResults);
+				sendingContext = pendingContext;
+				clearPendingResults();
+			}
+			pendingResults.add(result);
+			pendingBytes += size;
+			if (pendingResults.size() == 1) {
+				pendingContext = context.getApplicationContext();
+				if (handler == null)
+					handler = new Handler(Looper.getMainLooper());
+				handler.postDelayed(flushTask, coalescingMaxLatency);
+			}
+		}
+		if (results != null && sendingContext != null)
+			sendPendingResults(sendingContext, results);
+
+		synchronized (pendingResults) {
+			if (pendingResults.size() < coalescingMaxResults && pendingBytes < coalescingMaxBytes)
+				return;
+		}
+		flushPendingResults();
+	}
+
+	/**
+	 * Sends all pending results in a single {@link PendingIntent}. This should be called when
+	 * the scan is stopped, as pending results are otherwise sent after the maximum latency.
+	 */
+	/* package */ void flushPendingResults() {
+		final ArrayList<Parcelable> results;
+		final Context context;
+		synchronized (pendingResults) {
+			if (pendingResults.isEmpty())
+				return;
+			results = new ArrayList<>(pendingResults);
+			context = pendingContext;
+			clearPendingResults();
+		}
+		if (context != null)
+			sendPendingResults(context, results);
+	}
+
+	private void clearPendingResults() {
+		pendingResults.clear();
+		pendingBytes = 0;
+		pendingContext = null;
+		if (handler != null)
+			handler.removeCallbacks(flushTask);
+	}
+
+	private void sendPendingResults(@NonNull final Context context,
+									@NonNull final ArrayList<Parcelable> results) {
+		try {
+			final Intent extrasIntent = new Intent();
+			extrasIntent.putExtra(BluetoothLeScannerCompat.EXTRA_CALLBACK_TYPE,
+					ScanSettings.CALLBACK_TYPE_ALL_MATCHES);
+			extrasIntent.putParcelableArrayListExtra(BluetoothLeScannerCompat.EXTRA_LIST_SCAN_RESULT, results);
+			extrasIntent.setExtrasClassLoader(ScanResult.class.getClassLoader());
+			callbackIntent.send(context, 0, extrasIntent);
+		} catch (final PendingIntent.CanceledException e) {
+			// Ignore
+		}
+	}
+
+	@Override
+	public void onMatchesFound(@NonNull final List<ScanResult> results) {
+		sendResults(ScanSettings.CALLBACK_TYPE_FIRST_MATCH, results);
+	}
+
+	@Override
+	public void onMatchesLost(@NonNull final List<ScanResult> results) {
+		sendResults(ScanSettings.CALLBACK_TYPE_MATCH_LOST, results);
+	}
+
 	@Override
 	public void onBatchScanResults(@NonNull final List<ScanResult> results) {
 		final Context context = this.context != null ? this.context : this.service;
@@ -112,12 +234,37 @@ import androidx.annotation.Nullable;
 		}
 	}
 
+	/**
+	 * Sends all given results in a single {@link PendingIntent} with the given callback type.
+	 */
+	private void sendResults(final int callbackType, @NonNull final List<ScanResult> results) {
+		final Context context = this.context != null ? this.context : this.service;
+		if (context == null)
+			return;
+
+		// Keep the order of results.
+		flushPendingResults();
+
+		try {
+			final Intent extrasIntent = new Intent();
+			extrasIntent.putExtra(BluetoothLeScannerCompat.EXTRA_CALLBACK_TYPE, callbackType);
+			extrasIntent.putParcelableArrayListExtra(BluetoothLeScannerCompat.EXTRA_LIST_SCAN_RESULT,
+					new ArrayList<Parcelable>(results));
+			extrasIntent.setExtrasClassLoader(ScanResult.class.getClassLoader());
+			callbackIntent.send(context, 0, extrasIntent);
+		} catch (final PendingIntent.CanceledException e) {
+			// Ignore
+		}
+	}
+
 	@Override
 	public void onScanFailed(final int errorCode) {
 		final Context context = this.context != null ? this.context : this.service;
 		if (context == null)
 			return;
 
+		flushPendingResults();
+
 		try {
 			final Intent extrasIntent = new Intent();
 			extrasIntent.putExtra(BluetoothLeScannerCompat.EXTRA_ERROR_CODE, errorCode);
@@ -11,6 +11,8 @@ import android.os.Build;
 import java.util.ArrayList;
 import java.util.List;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RequiresApi;
 
 /**
@@ -27,13 +29,7 @@ public class PendingIntentReceiver extends BroadcastReceiver {
 	/* package */ static final String EXTRA_PENDING_INTENT = "no.nordicsemi.android.support.v18.EXTRA_PENDING_INTENT";
 	/* package */ static final String EXTRA_FILTERS = "no.nordicsemi.android.support.v18.EXTRA_FILTERS";
 	/* package */ static final String EXTRA_SETTINGS = "no.nordicsemi.android.support.v18.EXTRA_SETTINGS";
-	/* package */ static final String EXTRA_USE_HARDWARE_BATCHING = "no.nordicsemi.android.support.v18.EXTRA_USE_HARDWARE_BATCHING";
-	/* package */ static final String EXTRA_USE_HARDWARE_FILTERING = "no.nordicsemi.android.support.v18.EXTRA_USE_HARDWARE_FILTERING";
-	/* package */ static final String EXTRA_USE_HARDWARE_CALLBACK_TYPES = "no.nordicsemi.android.support.v18.EXTRA_USE_HARDWARE_CALLBACK_TYPES";
-	/* package */ static final String EXTRA_MATCH_LOST_TIMEOUT = "no.nordicsemi.android.support.v18.EXTRA_MATCH_LOST_TIMEOUT";
-	/* package */ static final String EXTRA_MATCH_LOST_INTERVAL = "no.nordicsemi.android.support.v18.EXTRA_MATCH_LOST_INTERVAL";
-	/* package */ static final String EXTRA_MATCH_MODE = "no.nordicsemi.android.support.v18.EXTRA_MATCH_MODE";
-	/* package */ static final String EXTRA_NUM_OF_MATCHES = "no.nordicsemi.android.support.v18.EXTRA_NUM_OF_MATCHES";
+	/* package */ static final String EXTRA_COMPAT_SETTINGS = "no.nordicsemi.android.support.v18.EXTRA_COMPAT_SETTINGS";
 
 	@RequiresApi(api = Build.VERSION_CODES.O)
 	@Override
@@ -47,43 +43,14 @@ public class PendingIntentReceiver extends BroadcastReceiver {
 		if (callbackIntent == null)
 			return;
 
-		// Filters and settings have been set as native objects, otherwise they could not be
-		// serialized by the system scanner.
-		final ArrayList<android.bluetooth.le.ScanFilter> nativeScanFilters =
-				intent.getParcelableArrayListExtra(EXTRA_FILTERS);
-		final android.bluetooth.le.ScanSettings nativeScanSettings = intent.getParcelableExtra(EXTRA_SETTINGS);
-		if (nativeScanFilters == null || nativeScanSettings == null)
-			return;
-
-		// Some ScanSettings parameters are only on compat version and need to be sent separately.
-		final boolean useHardwareBatchingIfSupported = intent.getBooleanExtra(EXTRA_USE_HARDWARE_BATCHING, true);
-		final boolean useHardwareFilteringIfSupported = intent.getBooleanExtra(EXTRA_USE_HARDWARE_FILTERING, true);
-		final boolean useHardwareCallbackTypesIfSupported = intent.getBooleanExtra(EXTRA_USE_HARDWARE_CALLBACK_TYPES, true);
-		final long matchLostDeviceTimeout = intent.getLongExtra(EXTRA_MATCH_LOST_TIMEOUT, ScanSettings.MATCH_LOST_DEVICE_TIMEOUT_DEFAULT);
-		final long matchLostTaskInterval = intent.getLongExtra(EXTRA_MATCH_LOST_INTERVAL, ScanSettings.MATCH_LOST_TASK_INTERVAL_DEFAULT);
-		final int matchMode = intent.getIntExtra(EXTRA_MATCH_MODE, ScanSettings.MATCH_MODE_AGGRESSIVE);
-		final int numOfMatches = intent.getIntExtra(EXTRA_NUM_OF_MATCHES, ScanSettings.MATCH_NUM_MAX_ADVERTISEMENT);
-
-		// Convert native objects to compat versions.
-		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
-		final BluetoothLeScannerImplOreo scannerImpl = (BluetoothLeScannerImplOreo) scanner;
-		final ArrayList<ScanFilter> filters = scannerImpl.fromNativeScanFilters(nativeScanFilters);
-		final ScanSettings settings = scannerImpl.fromNativeScanSettings(nativeScanSettings,
-				useHardwareBatchingIfSupported,
-				useHardwareFilteringIfSupported,
-				useHardwareCallbackTypesIfSupported,
-				matchLostDeviceTimeout, matchLostTaskInterval,
-				matchMode, numOfMatches);
-
-		// Check device capabilities and create a wrapper that will send a PendingIntent.
-		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
-		final boolean offloadedBatchingSupported = adapter.isOffloadedScanBatchingSupported();
-		final boolean offloadedFilteringSupported = adapter.isOffloadedFilteringSupported();
-
 		// Obtain or create a PendingIntentExecutorWrapper. A static instance (obtained from a
 		// static BluetoothLeScannerCompat singleton) is necessary as it allows to keeps
 		// track of found devices and emulate batching and callback types if those are not
 		// supported or a compat version was forced.
+		// The wrapper keeps the filters and settings converted to compat versions, so they
+		// are read from the intent only when the wrapper has to be created.
+		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
+		final BluetoothLeScannerImplOreo scannerImpl = (BluetoothLeScannerImplOreo) scanner;
 
 		BluetoothLeScannerImplOreo.PendingIntentExecutorWrapper wrapper;
 		//noinspection SynchronizationOnLocalVariableOrMethodParameter
@@ -97,13 +64,9 @@ public class PendingIntentReceiver extends BroadcastReceiver {
 			if (wrapper == null) {
 				// Wrapper has not been created, or was created, but the app was then killed
 				// and must be created again. Some information will be lost (batched devices).
-				final PendingIntentExecutor executor = new PendingIntentExecutor(callbackIntent, settings);
-				wrapper = new BluetoothLeScannerImplOreo.PendingIntentExecutorWrapper(
-						offloadedBatchingSupported,
-						offloadedFilteringSupported,
-						filters, settings,
-						executor
-				);
+				wrapper = createWrapper(intent, callbackIntent, scannerImpl);
+				if (wrapper == null)
+					return;
 				scannerImpl.addWrapper(callbackIntent, wrapper);
 			}
 		}
@@ -118,11 +81,16 @@ public class PendingIntentReceiver extends BroadcastReceiver {
 		if (nativeScanResults != null) {
 			final ArrayList<ScanResult> results = scannerImpl.fromNativeScanResults(nativeScanResults);
 
-			if (settings.getReportDelayMillis() > 0) {
+			if (wrapper.scanSettings.getReportDelayMillis() > 0) {
 				wrapper.handleScanResults(results);
+				final DeviceRegistry registry = DeviceRegistry.getInstance();
+				for (final ScanResult result : results)
+					registry.record(result);
 			} else if (!results.isEmpty()) {
 				final int callbackType = intent.getIntExtra(BluetoothLeScanner.EXTRA_CALLBACK_TYPE,
 						ScanSettings.CALLBACK_TYPE_ALL_MATCHES);
+				if (callbackType != ScanSettings.CALLBACK_TYPE_MATCH_LOST)
+					DeviceRegistry.getInstance().record(results.get(0));
 				wrapper.handleScanResult(callbackType, results.get(0));
 			}
 		} else {
@@ -136,4 +104,45 @@ public class PendingIntentReceiver extends BroadcastReceiver {
 		// reference to a context.
 		wrapper.executor.setTemporaryContext(null);
 	}
+
+	/**
+	 * Creates a wrapper for the given {@link PendingIntent} using filters and settings
+	 * stored in the intent.
+	 *
+	 * @return The wrapper, or null if the intent does not contain filters or settings.
+	 */
+	@Nullable
+	@RequiresApi(api = Build.VERSION_CODES.O)
+	private static BluetoothLeScannerImplOreo.PendingIntentExecutorWrapper createWrapper(
+			@NonNull final Intent intent,
+			@NonNull final PendingIntent callbackIntent,
+			@NonNull final BluetoothLeScannerImplOreo scannerImpl) {
+		// Filters and settings have been set as native objects, otherwise they could not be
+		// serialized by the system scanner.
+		final ArrayList<android.bluetooth.le.ScanFilter> nativeScanFilters =
+				intent.getParcelableArrayListExtra(EXTRA_FILTERS);
+		final android.bluetooth.le.ScanSettings nativeScanSettings = intent.getParcelableExtra(EXTRA_SETTINGS);
+		if (nativeScanFilters == null || nativeScanSettings == null)
+			return null;
+
+		// Convert native objects to compat versions. Compat only parameters are sent
+		// separately. If they can't be read, only the native ones are used.
+		final ArrayList<ScanFilter> filters = scannerImpl.fromNativeScanFilters(nativeScanFilters);
+		ScanSettings settings = ScanSettings.unmarshall(intent.getByteArrayExtra(EXTRA_COMPAT_SETTINGS));
+		if (settings == null)
+			settings = scannerImpl.fromNativeScanSettings(nativeScanSettings);
+
+		// Check device capabilities and create a wrapper that will send a PendingIntent.
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		final boolean offloadedBatchingSupported = adapter.isOffloadedScanBatchingSupported();
+		final boolean offloadedFilteringSupported = adapter.isOffloadedFilteringSupported();
+
+		final PendingIntentExecutor executor = new PendingIntentExecutor(callbackIntent, settings);
+		return new BluetoothLeScannerImplOreo.PendingIntentExecutorWrapper(
+				offloadedBatchingSupported,
+				offloadedFilteringSupported,
+				filters, settings,
+				executor
+		);
+	}
 }
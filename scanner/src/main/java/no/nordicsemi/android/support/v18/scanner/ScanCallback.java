@@ -79,12 +79,45 @@ public abstract class ScanCallback {
 
 	/**
 	 * Callback when batch results are delivered.
+	 * <p>
+	 * When batching is emulated, the list may be given back to the scanner using
+	 * {@link BluetoothLeScannerCompat#recycleBatch(ScanCallback, List)} once it is no longer needed.
 	 *
 	 * @param results List of scan results that are previously scanned.
 	 */
 	public void onBatchScanResults(@NonNull final List<ScanResult> results) {
 	}
 
+	/**
+	 * Callback when one or more devices have been found. It is called when the
+	 * {@link ScanSettings#CALLBACK_TYPE_FIRST_MATCH} callback type is emulated by the library
+	 * and groups devices found at the same time into a single call.
+	 * <p>
+	 * The default implementation calls {@link #onScanResult(int, ScanResult)} with
+	 * {@link ScanSettings#CALLBACK_TYPE_FIRST_MATCH} for each result.
+	 *
+	 * @param results List of scan results of devices that have been found.
+	 */
+	public void onMatchesFound(@NonNull final List<ScanResult> results) {
+		for (final ScanResult result : results)
+			onScanResult(ScanSettings.CALLBACK_TYPE_FIRST_MATCH, result);
+	}
+
+	/**
+	 * Callback when one or more devices have been lost. It is called when the
+	 * {@link ScanSettings#CALLBACK_TYPE_MATCH_LOST} callback type is emulated by the library
+	 * and groups all devices that timed out at the same time into a single call.
+	 * <p>
+	 * The default implementation calls {@link #onScanResult(int, ScanResult)} with
+	 * {@link ScanSettings#CALLBACK_TYPE_MATCH_LOST} for each result.
+	 *
+	 * @param results List of last scan results of devices that have been lost.
+	 */
+	public void onMatchesLost(@NonNull final List<ScanResult> results) {
+		for (final ScanResult result : results)
+			onScanResult(ScanSettings.CALLBACK_TYPE_MATCH_LOST, result);
+	}
+
 	/**
 	 * Callback when scan could not be started.
 	 *
@@ -0,0 +1,203 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.os.Handler;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The scheduler used by {@link BluetoothLeScannerCompat.ScanCallbackWrapper} to deliver
+ * results to the user's {@link ScanCallback} and to run the emulation timers (batch flush,
+ * match lost). It is backed either by a {@link Handler}, or by an {@link Executor} given in
+ * {@link BluetoothLeScannerCompat#startScan(java.util.List, ScanSettings, Executor, ScanCallback)}.
+ */
+/* package */ abstract class ScanCallbackScheduler {
+
+	@NonNull
+	static ScanCallbackScheduler of(@NonNull final Handler handler) {
+		return new HandlerScheduler(handler);
+	}
+
+	@NonNull
+	static ScanCallbackScheduler of(@NonNull final Executor executor) {
+		return new ExecutorScheduler(executor);
+	}
+
+	/**
+	 * Runs the task as soon as possible. Tasks are executed one at a time, in the order they
+	 * were posted.
+	 */
+	abstract void post(@NonNull final Runnable task);
+
+	/**
+	 * Runs the task after the given delay.
+	 */
+	abstract void postDelayed(@NonNull final Runnable task, final long delayMillis);
+
+	/**
+	 * Removes all pending posts of the given task.
+	 */
+	abstract void removeCallbacks(@NonNull final Runnable task);
+
+	/**
+	 * Removes all pending tasks.
+	 */
+	abstract void removeAll();
+
+	private static final class HandlerScheduler extends ScanCallbackScheduler {
+		@NonNull private final Handler handler;
+
+		private HandlerScheduler(@NonNull final Handler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		void post(@NonNull final Runnable task) {
+			handler.post(task);
+		}
+
+		@Override
+		void postDelayed(@NonNull final Runnable task, final long delayMillis) {
+			handler.postDelayed(task, delayMillis);
+		}
+
+		@Override
+		void removeCallbacks(@NonNull final Runnable task) {
+			handler.removeCallbacks(task);
+		}
+
+		@Override
+		void removeAll() {
+			handler.removeCallbacksAndMessages(null);
+		}
+	}
+
+	/**
+	 * A scheduler that runs tasks one by one on the given {@link Executor}, which may use
+	 * multiple threads. Delayed tasks are timed by a single, shared timer thread and are
+	 * handed over to the executor when they are due.
+	 */
+	private static final class ExecutorScheduler extends ScanCallbackScheduler {
+		@Nullable private static ScheduledExecutorService timer;
+
+		@NonNull private final Executor executor;
+		@NonNull private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+		@NonNull private final List<DelayedTask> delayedTasks = new ArrayList<>();
+		@NonNull private final Runnable runNextTask = this::runNextTask;
+		private boolean running;
+
+		private ExecutorScheduler(@NonNull final Executor executor) {
+			this.executor = executor;
+		}
+
+		@NonNull
+		private static synchronized ScheduledExecutorService getTimer() {
+			if (timer == null) {
+				timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+					final Thread thread = new Thread(runnable, ScanCallbackScheduler.class.getSimpleName());
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+			return timer;
+		}
+
+		@Override
+		void post(@NonNull final Runnable task) {
+			synchronized (this) {
+				tasks.offer(task);
+				if (running)
+					return;
+				running = true;
+			}
+			executor.execute(runNextTask);
+		}
+
+		@Override
+		void postDelayed(@NonNull final Runnable task, final long delayMillis) {
+			final DelayedTask delayedTask = new DelayedTask(task);
+			synchronized (this) {
+				delayedTasks.add(delayedTask);
+				delayedTask.future = getTimer().schedule(delayedTask, delayMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		@Override
+		synchronized void removeCallbacks(@NonNull final Runnable task) {
+			//noinspection StatementWithEmptyBody
+			while (tasks.remove(task)) {
+				// Remove all occurrences of the task
+			}
+			final Iterator<DelayedTask> iterator = delayedTasks.iterator();
+			while (iterator.hasNext()) {
+				final DelayedTask delayedTask = iterator.next();
+				if (delayedTask.task == task) {
+					delayedTask.cancel();
+					iterator.remove();
+				}
+			}
+		}
+
+		@Override
+		synchronized void removeAll() {
+			tasks.clear();
+			for (final DelayedTask delayedTask : delayedTasks)
+				delayedTask.cancel();
+			delayedTasks.clear();
+		}
+
+		private void runNextTask() {
+			final Runnable task;
+			synchronized (this) {
+				task = tasks.poll();
+			}
+			try {
+				if (task != null)
+					task.run();
+			} finally {
+				boolean hasMoreTasks;
+				synchronized (this) {
+					hasMoreTasks = running = !tasks.isEmpty();
+				}
+				// Each task is executed separately, so that the executor may interleave
+				// tasks from other sources.
+				if (hasMoreTasks)
+					executor.execute(runNextTask);
+			}
+		}
+
+		private final class DelayedTask implements Runnable {
+			@NonNull private final Runnable task;
+			@Nullable private ScheduledFuture<?> future;
+
+			private DelayedTask(@NonNull final Runnable task) {
+				this.task = task;
+			}
+
+			@Override
+			public void run() {
+				synchronized (ExecutorScheduler.this) {
+					// The task may have been removed when the timer was already firing.
+					if (!delayedTasks.remove(this))
+						return;
+				}
+				post(task);
+			}
+
+			private void cancel() {
+				if (future != null)
+					future.cancel(false);
+			}
+		}
+	}
+}
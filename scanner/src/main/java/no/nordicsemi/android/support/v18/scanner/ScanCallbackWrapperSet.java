@@ -1,20 +1,43 @@
 package no.nordicsemi.android.support.v18.scanner;
 
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+/**
+ * A registry of scan callback wrappers, indexed by identity of the callback. A wrapper can be
+ * found in O(1) both by the user callback, which is referenced weakly, and by the callback
+ * the wrapper delivers to.
+ * <p>
+ * Wrappers whose user callback was garbage collected are found using a
+ * {@link ReferenceQueue} and removed by {@link #purge()}, which returns them so that
+ * their scans can be stopped.
+ * <p>
+ * This class is not thread safe.
+ */
 class ScanCallbackWrapperSet<W extends BluetoothLeScannerCompat.ScanCallbackWrapper> {
+	/** Wrappers by the callback they deliver to, usually a {@link UserScanCallbackWrapper}. */
 	@NonNull
-	private final Set<W> wrappers = new HashSet<>();
+	private final Map<ScanCallback, W> wrappers = new IdentityHashMap<>();
+	/** Wrappers by the user callback wrapped in a {@link UserScanCallbackWrapper}. */
+	@NonNull
+	private final Map<CallbackKey, W> wrappersByUserCallback = new HashMap<>();
+	@NonNull
+	private final ReferenceQueue<ScanCallback> queue = new ReferenceQueue<>();
 
 	@NonNull
-	public Set<W> values() {
-		return wrappers;
+	public Collection<W> values() {
+		return Collections.unmodifiableCollection(wrappers.values());
 	}
 
 	boolean isEmpty() {
@@ -22,69 +45,85 @@ class ScanCallbackWrapperSet<W extends BluetoothLeScannerCompat.ScanCallbackWrap
 	}
 
 	void add(@NonNull final W wrapper) {
-		wrappers.add(wrapper);
+		wrappers.put(wrapper.scanCallback, wrapper);
+		if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
+			final ScanCallback userCallback = ((UserScanCallbackWrapper) wrapper.scanCallback).get();
+			if (userCallback != null)
+				wrappersByUserCallback.put(new CallbackKey(userCallback, queue), wrapper);
+		}
 	}
 
 	boolean contains(@NonNull final ScanCallback callback) {
-		for (final W wrapper : wrappers) {
-			if (wrapper.scanCallback == callback) {
-				return true;
-			}
-			if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
-				final UserScanCallbackWrapper callbackWrapper = (UserScanCallbackWrapper) wrapper.scanCallback;
-				if (callbackWrapper.get() == callback) {
-					return true;
-				}
-			}
-		}
-		return false;
+		return get(callback) != null;
 	}
 
 	@Nullable
 	W get(@NonNull final ScanCallback callback) {
-		for (final W wrapper : wrappers) {
-			if (wrapper.scanCallback == callback) {
-				return wrapper;
-			}
-			if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
-				final UserScanCallbackWrapper callbackWrapper = (UserScanCallbackWrapper) wrapper.scanCallback;
-				if (callbackWrapper.get() == callback) {
-					return wrapper;
-				}
-			}
-		}
-		return null;
+		final W wrapper = wrappers.get(callback);
+		if (wrapper != null)
+			return wrapper;
+		return wrappersByUserCallback.get(new CallbackKey(callback, null));
 	}
 
 	@Nullable
 	W remove(@NonNull final ScanCallback callback) {
-		for (final W wrapper : wrappers) {
-			if (wrapper.scanCallback == callback) {
-				return wrapper;
-			}
-			if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
-				final UserScanCallbackWrapper callbackWrapper = (UserScanCallbackWrapper) wrapper.scanCallback;
-				if (callbackWrapper.get() == callback) {
-					wrappers.remove(wrapper);
-					return wrapper;
-				}
-			}
+		final W wrapper = get(callback);
+		if (wrapper == null)
+			return null;
+
+		wrappers.remove(wrapper.scanCallback);
+		if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
+			final ScanCallback userCallback = ((UserScanCallbackWrapper) wrapper.scanCallback).get();
+			if (userCallback != null)
+				wrappersByUserCallback.remove(new CallbackKey(userCallback, null));
+		}
+		return wrapper;
+	}
+
+	/**
+	 * Removes wrappers whose user callbacks were garbage collected.
+	 *
+	 * @return The removed wrappers, which have to be closed and their scans stopped.
+	 */
+	@NonNull
+	List<W> purge() {
+		final List<W> collected = new ArrayList<>();
+		Reference<? extends ScanCallback> reference;
+		while ((reference = queue.poll()) != null) {
+			final W wrapper = wrappersByUserCallback.remove(reference);
+			// The wrapper may have been removed before the callback was collected.
+			if (wrapper != null && wrappers.remove(wrapper.scanCallback) != null)
+				collected.add(wrapper);
 		}
-		cleanUp();
-		return null;
+		return collected;
 	}
 
-	private void cleanUp() {
-		final List<W> deadWrappers = new LinkedList<>();
-		for (final W wrapper : wrappers) {
-			if (wrapper.scanCallback instanceof UserScanCallbackWrapper) {
-				final UserScanCallbackWrapper callbackWrapper = (UserScanCallbackWrapper) wrapper.scanCallback;
-				if (callbackWrapper.isDead())
-					deadWrappers.add(wrapper);
-			}
+	/**
+	 * A weak reference to a callback, equal to other references to the same callback.
+	 * The hash code is computed once, so the key can be found after the callback is collected.
+	 */
+	private static final class CallbackKey extends WeakReference<ScanCallback> {
+		private final int hashCode;
+
+		private CallbackKey(@NonNull final ScanCallback callback,
+							@Nullable final ReferenceQueue<ScanCallback> queue) {
+			super(callback, queue);
+			hashCode = System.identityHashCode(callback);
 		}
-		for (final W wrapper : deadWrappers) {
-			wrappers.remove(wrapper);
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(@Nullable final Object o) {
+			if (this == o)
+				return true;
+			if (!(o instanceof CallbackKey))
+				return false;
+			final ScanCallback callback = get();
+			return callback != null && callback == ((CallbackKey) o).get();
 		}
 	}
 }
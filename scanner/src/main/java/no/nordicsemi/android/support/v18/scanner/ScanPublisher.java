@@ -0,0 +1,246 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+/**
+ * A {@link Flow.Publisher} of scan results. The scan is started when the first subscriber
+ * subscribes and stopped when the last one cancels its subscription, or when scanning fails.
+ * <p>
+ * Each item is a list of scan results: a single result reported with
+ * {@link ScanCallback#onScanResult(int, ScanResult)} or a batch reported with
+ * {@link ScanCallback#onBatchScanResults(List)}. Every subscriber receives all items reported
+ * after it subscribed, at the rate it requested them. Items that have not yet been requested
+ * are kept in a buffer of limited capacity. When the buffer is full, the oldest item is
+ * dropped.
+ */
+@RequiresApi(api = Build.VERSION_CODES.R)
+/* package */ class ScanPublisher implements Flow.Publisher<List<ScanResult>> {
+	@NonNull private final BluetoothLeScannerCompat scanner;
+	@NonNull private final List<ScanFilter> filters;
+	@NonNull private final ScanSettings settings;
+	@NonNull private final Executor executor;
+	private final int bufferCapacity;
+
+	@NonNull private final List<ScanSubscription> subscriptions = new ArrayList<>();
+	private boolean scanning;
+
+	@NonNull
+	private final ScanCallback scanCallback = new ScanCallback() {
+		@Override
+		public void onScanResult(final int callbackType, @NonNull final ScanResult result) {
+			// Lost devices are not emitted, as items do not contain the callback type.
+			if (callbackType != ScanSettings.CALLBACK_TYPE_MATCH_LOST)
+				emit(Collections.singletonList(result));
+		}
+
+		@Override
+		public void onMatchesFound(@NonNull final List<ScanResult> results) {
+			emit(results);
+		}
+
+		@Override
+		public void onMatchesLost(@NonNull final List<ScanResult> results) {
+			// Ignore
+		}
+
+		@Override
+		public void onBatchScanResults(@NonNull final List<ScanResult> results) {
+			if (!results.isEmpty())
+				emit(results);
+		}
+
+		@Override
+		public void onScanFailed(final int errorCode) {
+			fail(new IllegalStateException("Scan failed with error " + errorCode));
+		}
+	};
+
+	ScanPublisher(@NonNull final BluetoothLeScannerCompat scanner,
+				  @NonNull final List<ScanFilter> filters,
+				  @NonNull final ScanSettings settings,
+				  @NonNull final Executor executor,
+				  final int bufferCapacity) {
+		this.scanner = scanner;
+		this.filters = filters;
+		this.settings = settings;
+		this.executor = executor;
+		this.bufferCapacity = bufferCapacity;
+	}
+
+	@Override
+	public void subscribe(final Flow.Subscriber<? super List<ScanResult>> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("subscriber is null");
+
+		final ScanSubscription subscription = new ScanSubscription(subscriber);
+		synchronized (this) {
+			subscriptions.add(subscription);
+		}
+		subscriber.onSubscribe(subscription);
+
+		// The subscriber may have cancelled the subscription in onSubscribe(...).
+		synchronized (this) {
+			if (scanning || !subscriptions.contains(subscription))
+				return;
+			try {
+				scanner.startScan(filters, settings, executor, scanCallback);
+				scanning = true;
+				return;
+			} catch (final Exception e) {
+				subscriptions.remove(subscription);
+				subscription.fail(e);
+			}
+		}
+	}
+
+	private void emit(@NonNull final List<ScanResult> item) {
+		final ScanSubscription[] targets;
+		synchronized (this) {
+			targets = subscriptions.toArray(new ScanSubscription[0]);
+		}
+		for (final ScanSubscription subscription : targets)
+			subscription.offer(item);
+	}
+
+	private void fail(@NonNull final Throwable error) {
+		final ScanSubscription[] targets;
+		synchronized (this) {
+			targets = subscriptions.toArray(new ScanSubscription[0]);
+			subscriptions.clear();
+			stopScanning();
+		}
+		for (final ScanSubscription subscription : targets)
+			subscription.fail(error);
+	}
+
+	private synchronized void remove(@NonNull final ScanSubscription subscription) {
+		if (subscriptions.remove(subscription) && subscriptions.isEmpty())
+			stopScanning();
+	}
+
+	private void stopScanning() {
+		if (!scanning)
+			return;
+		scanning = false;
+		try {
+			scanner.stopScan(scanCallback);
+		} catch (final Exception e) {
+			// Ignore
+		}
+	}
+
+	private final class ScanSubscription implements Flow.Subscription {
+		@NonNull private final Flow.Subscriber<? super List<ScanResult>> subscriber;
+		@NonNull private final ArrayDeque<List<ScanResult>> buffer = new ArrayDeque<>();
+		@NonNull private final AtomicInteger wip = new AtomicInteger();
+		@NonNull private final AtomicLong requested = new AtomicLong();
+		@Nullable private volatile Throwable error;
+		private volatile boolean cancelled;
+
+		private ScanSubscription(@NonNull final Flow.Subscriber<? super List<ScanResult>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(final long n) {
+			if (n <= 0) {
+				remove(this);
+				fail(new IllegalArgumentException("non-positive subscription request: " + n));
+				return;
+			}
+			long current, next;
+			do {
+				current = requested.get();
+				next = current + n;
+				if (next < 0) // overflow
+					next = Long.MAX_VALUE;
+			} while (!requested.compareAndSet(current, next));
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			if (!cancelled) {
+				cancelled = true;
+				remove(this);
+				drain();
+			}
+		}
+
+		private void offer(@NonNull final List<ScanResult> item) {
+			synchronized (buffer) {
+				if (buffer.size() >= bufferCapacity)
+					buffer.poll();
+				buffer.offer(item);
+			}
+			drain();
+		}
+
+		private void fail(@NonNull final Throwable error) {
+			this.error = error;
+			drain();
+		}
+
+		/**
+		 * Delivers buffered items up to the requested amount. Only one thread at a time
+		 * delivers items, other callers just mark that there is more work to do.
+		 */
+		private void drain() {
+			if (wip.getAndIncrement() != 0)
+				return;
+
+			int missed = 1;
+			do {
+				final long requested = this.requested.get();
+				long emitted = 0;
+				while (!cancelled && error == null && emitted != requested) {
+					final List<ScanResult> item;
+					synchronized (buffer) {
+						item = buffer.poll();
+					}
+					if (item == null)
+						break;
+					subscriber.onNext(item);
+					emitted++;
+				}
+
+				if (cancelled) {
+					clearBuffer();
+					return;
+				}
+
+				final Throwable error = this.error;
+				if (error != null) {
+					cancelled = true;
+					clearBuffer();
+					subscriber.onError(error);
+					return;
+				}
+
+				if (emitted != 0 && requested != Long.MAX_VALUE)
+					this.requested.addAndGet(-emitted);
+
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void clearBuffer() {
+			synchronized (buffer) {
+				buffer.clear();
+			}
+		}
+	}
+}
@@ -99,6 +99,15 @@ public final class ScanResult implements Parcelable {
 	private final int txPower;
 	private final int periodicAdvertisingInterval;
 
+	// Statistics of RSSI values received from the device since it was last reported.
+	private final int rssiCount;
+	private final int rssiMax;
+	private final float rssiMean;
+
+	// Filtered RSSI and the distance estimated from it.
+	private final float smoothedRssi;
+	private final float estimatedDistance;
+
 	/**
 	 * Constructs a new ScanResult.
 	 *
@@ -120,6 +129,11 @@ public final class ScanResult implements Parcelable {
 		this.advertisingSid = SID_NOT_PRESENT;
 		this.txPower = 127;
 		this.periodicAdvertisingInterval = 0;
+		this.rssiCount = 1;
+		this.rssiMax = rssi;
+		this.rssiMean = rssi;
+		this.smoothedRssi = rssi;
+		this.estimatedDistance = Float.NaN;
 	}
 
 	/**
@@ -151,6 +165,42 @@ public final class ScanResult implements Parcelable {
 		this.periodicAdvertisingInterval = periodicAdvertisingInterval;
 		this.scanRecord = scanRecord;
 		this.timestampNanos = timestampNanos;
+		this.rssiCount = 1;
+		this.rssiMax = rssi;
+		this.rssiMean = rssi;
+		this.smoothedRssi = rssi;
+		this.estimatedDistance = Float.NaN;
+	}
+
+	/**
+	 * Constructs a copy of the given result with values derived from the RSSI of packets
+	 * received from the device.
+	 *
+	 * @param result The latest scan result.
+	 * @param rssiCount Number of packets received since the device was last reported.
+	 * @param rssiMean Mean RSSI of those packets.
+	 * @param rssiMax Maximum RSSI of those packets.
+	 * @param smoothedRssi The filtered RSSI value.
+	 * @param estimatedDistance The distance estimated from the filtered RSSI value, or NaN.
+	 */
+	/* package */ ScanResult(@NonNull final ScanResult result,
+							 final int rssiCount, final float rssiMean, final int rssiMax,
+							 final float smoothedRssi, final float estimatedDistance) {
+		this.device = result.device;
+		this.eventType = result.eventType;
+		this.primaryPhy = result.primaryPhy;
+		this.secondaryPhy = result.secondaryPhy;
+		this.advertisingSid = result.advertisingSid;
+		this.txPower = result.txPower;
+		this.rssi = result.rssi;
+		this.periodicAdvertisingInterval = result.periodicAdvertisingInterval;
+		this.scanRecord = result.scanRecord;
+		this.timestampNanos = result.timestampNanos;
+		this.rssiCount = rssiCount;
+		this.rssiMax = rssiMax;
+		this.rssiMean = rssiMean;
+		this.smoothedRssi = smoothedRssi;
+		this.estimatedDistance = estimatedDistance;
 	}
 
 	private ScanResult(final Parcel in) {
@@ -166,6 +216,11 @@ public final class ScanResult implements Parcelable {
 		advertisingSid = in.readInt();
 		txPower = in.readInt();
 		periodicAdvertisingInterval = in.readInt();
+		rssiCount = in.readInt();
+		rssiMax = in.readInt();
+		rssiMean = in.readFloat();
+		smoothedRssi = in.readFloat();
+		estimatedDistance = in.readFloat();
 	}
 
 	@Override
@@ -185,6 +240,11 @@ public final class ScanResult implements Parcelable {
 		dest.writeInt(advertisingSid);
 		dest.writeInt(txPower);
 		dest.writeInt(periodicAdvertisingInterval);
+		dest.writeInt(rssiCount);
+		dest.writeInt(rssiMax);
+		dest.writeFloat(rssiMean);
+		dest.writeFloat(smoothedRssi);
+		dest.writeFloat(estimatedDistance);
 	}
 
 	@Override
@@ -290,12 +350,65 @@ public final class ScanResult implements Parcelable {
 		return periodicAdvertisingInterval;
 	}
 
+	/**
+	 * Returns the number of packets received from the device since it was last reported.
+	 * This is 1, unless {@link ScanSettings.Builder#setDeviceReportInterval(long)} was used.
+	 */
+	public int getRssiCount() {
+		return rssiCount;
+	}
+
+	/**
+	 * Returns the mean RSSI in dBm of packets received from the device since it was last reported.
+	 * Without {@link ScanSettings.Builder#setDeviceReportInterval(long)} this is equal to
+	 * {@link #getRssi()}.
+	 */
+	public float getRssiMean() {
+		return rssiMean;
+	}
+
+	/**
+	 * Returns the highest RSSI in dBm of packets received from the device since it was last
+	 * reported. Without {@link ScanSettings.Builder#setDeviceReportInterval(long)} this is
+	 * equal to {@link #getRssi()}.
+	 */
+	public int getRssiMax() {
+		return rssiMax;
+	}
+
+	/**
+	 * Returns the RSSI in dBm filtered using the signal filter set with
+	 * {@link ScanSettings.Builder#setEwmaSignalFilter(float)} or
+	 * {@link ScanSettings.Builder#setKalmanSignalFilter(float, float)}.
+	 * Without a signal filter this is equal to {@link #getRssi()}.
+	 */
+	public float getSmoothedRssi() {
+		return smoothedRssi;
+	}
+
+	/**
+	 * Returns the distance to the device in meters, estimated from {@link #getSmoothedRssi()}
+	 * and the TX power advertised by the device, or {@link Float#NaN} if unknown.
+	 * The distance is estimated only when a signal filter is set and the device advertises
+	 * its TX power.
+	 * <p>
+	 * The estimate is very rough, as the signal strength depends on the environment and
+	 * the orientation of both devices.
+	 *
+	 * @see ScanSettings.Builder#setPathLossExponent(float)
+	 */
+	public float getEstimatedDistance() {
+		return estimatedDistance;
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(device, rssi, scanRecord, timestampNanos,
 				eventType, primaryPhy, secondaryPhy,
 				advertisingSid, txPower,
-				periodicAdvertisingInterval);
+				periodicAdvertisingInterval,
+				rssiCount, rssiMax, rssiMean,
+				smoothedRssi, estimatedDistance);
 	}
 
 	@Override
@@ -315,7 +428,12 @@ public final class ScanResult implements Parcelable {
 				secondaryPhy == other.secondaryPhy &&
 				advertisingSid == other.advertisingSid &&
 				txPower == other.txPower &&
-				periodicAdvertisingInterval == other.periodicAdvertisingInterval;
+				periodicAdvertisingInterval == other.periodicAdvertisingInterval &&
+				rssiCount == other.rssiCount &&
+				rssiMax == other.rssiMax &&
+				Float.compare(rssiMean, other.rssiMean) == 0 &&
+				Float.compare(smoothedRssi, other.smoothedRssi) == 0 &&
+				Float.compare(estimatedDistance, other.estimatedDistance) == 0;
 	}
 
 	@Override
@@ -0,0 +1,128 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A bounded queue of scan results waiting to be delivered to the user's {@link ScanCallback}.
+ * When the queue is full, a result is dropped according to the overflow policy set using
+ * {@link ScanSettings.Builder#setDeliveryQueue(int, int)}.
+ * <p>
+ * This class is not thread safe.
+ */
+/* package */ class ScanResultQueue {
+	private final int overflowPolicy;
+	@NonNull private final ScanResult[] results;
+	@NonNull private final int[] callbackTypes;
+	/** Slots of queued results by device address. Used only when coalescing results. */
+	@Nullable private final Map<String, Integer> slots;
+	private int head;
+	private int size;
+
+	private long droppedCount;
+	private long coalescedCount;
+	private int maxSize;
+
+	ScanResultQueue(final int capacity, final int overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+		this.results = new ScanResult[capacity];
+		this.callbackTypes = new int[capacity];
+		this.slots = overflowPolicy == ScanSettings.OVERFLOW_POLICY_COALESCE ? new HashMap<>() : null;
+	}
+
+	/**
+	 * Adds the result to the queue. If the queue is full, either the oldest or the given result
+	 * will be dropped. When coalescing, a queued result from the same device is replaced.
+	 */
+	void offer(final int callbackType, @NonNull final ScanResult result) {
+		String address = null;
+		if (slots != null) {
+			address = result.getDevice().getAddress();
+			final Integer slot = slots.get(address);
+			// Only results of the same type can be coalesced, first match and match lost
+			// must not be replaced.
+			if (slot != null && callbackTypes[slot] == callbackType) {
+				results[slot] = result;
+				coalescedCount++;
+				return;
+			}
+		}
+
+		if (size == results.length) {
+			droppedCount++;
+			if (overflowPolicy == ScanSettings.OVERFLOW_POLICY_DROP_NEWEST)
+				return;
+			// When coalescing and the queue is full of different devices, the oldest result
+			// is dropped.
+			removeHead();
+		}
+
+		final int slot = (head + size) % results.length;
+		results[slot] = result;
+		callbackTypes[slot] = callbackType;
+		size++;
+		if (slots != null)
+			slots.put(address, slot);
+		if (maxSize < size)
+			maxSize = size;
+	}
+
+	/**
+	 * Returns the callback type of the result that will be returned by {@link #poll()}.
+	 */
+	int peekCallbackType() {
+		return callbackTypes[head];
+	}
+
+	/**
+	 * Removes and returns the oldest result from the queue, or null if the queue is empty.
+	 */
+	@Nullable
+	ScanResult poll() {
+		if (size == 0)
+			return null;
+		final ScanResult result = results[head];
+		removeHead();
+		return result;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	void clear() {
+		while (size > 0)
+			removeHead();
+	}
+
+	long getDroppedCount() {
+		return droppedCount;
+	}
+
+	long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	int getMaxSize() {
+		return maxSize;
+	}
+
+	private void removeHead() {
+		if (slots != null) {
+			final String address = results[head].getDevice().getAddress();
+			final Integer slot = slots.get(address);
+			if (slot != null && slot == head)
+				slots.remove(address);
+		}
+		results[head] = null;
+		head = (head + 1) % results.length;
+		size--;
+	}
+}
@@ -29,6 +29,7 @@ import android.os.Parcelable;
 import java.util.List;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 /**
  * Bluetooth LE scan settings are passed to {@link BluetoothLeScannerCompat#startScan} to define the
@@ -45,6 +46,9 @@ public final class ScanSettings implements Parcelable {
 
 	/**
 	 * The default interval of the task that calls match lost events.
+	 * <p>
+	 * The compat match lost task is now scheduled for the moment the least recently seen device
+	 * times out, so this value is no longer used.
 	 */
 	public static final long MATCH_LOST_TASK_INTERVAL_DEFAULT = 10000L; // [ms]
 
@@ -143,6 +147,114 @@ public final class ScanSettings implements Parcelable {
 	 */
 	public static final int PHY_LE_ALL_SUPPORTED = 255;
 
+	/**
+	 * When the delivery queue is full, the oldest result waiting for delivery is dropped.
+	 *
+	 * @see Builder#setDeliveryQueue(int, int)
+	 */
+	public static final int OVERFLOW_POLICY_DROP_OLDEST = 1;
+
+	/**
+	 * When the delivery queue is full, the new result is dropped.
+	 *
+	 * @see Builder#setDeliveryQueue(int, int)
+	 */
+	public static final int OVERFLOW_POLICY_DROP_NEWEST = 2;
+
+	/**
+	 * A new result replaces the result from the same device that is waiting for delivery, so
+	 * only the latest result from each device is delivered. When the queue is full of results
+	 * from other devices, the oldest one is dropped.
+	 *
+	 * @see Builder#setDeliveryQueue(int, int)
+	 */
+	public static final int OVERFLOW_POLICY_COALESCE = 3;
+
+	/**
+	 * An emulated batch contains the first packet received from each device in the report
+	 * delay window. This is the default batch policy.
+	 *
+	 * @see Builder#setBatchPolicy(int)
+	 */
+	public static final int BATCH_POLICY_KEEP_FIRST = 1;
+
+	/**
+	 * An emulated batch contains the latest packet received from each device in the report
+	 * delay window.
+	 *
+	 * @see Builder#setBatchPolicy(int)
+	 */
+	public static final int BATCH_POLICY_KEEP_LATEST = 2;
+
+	/**
+	 * An emulated batch contains the packet with the highest RSSI received from each device
+	 * in the report delay window.
+	 *
+	 * @see Builder#setBatchPolicy(int)
+	 */
+	public static final int BATCH_POLICY_KEEP_STRONGEST = 3;
+
+	/**
+	 * RSSI values are not filtered. This is the default.
+	 */
+	public static final int SIGNAL_FILTER_NONE = 0;
+
+	/**
+	 * RSSI values of each device are smoothed using an exponentially weighted moving average.
+	 *
+	 * @see Builder#setEwmaSignalFilter(float)
+	 */
+	public static final int SIGNAL_FILTER_EWMA = 1;
+
+	/**
+	 * RSSI values of each device are smoothed using a one-dimensional Kalman filter.
+	 *
+	 * @see Builder#setKalmanSignalFilter(float, float)
+	 */
+	public static final int SIGNAL_FILTER_KALMAN = 2;
+
+	/**
+	 * The default weight of a new RSSI value in the {@link #SIGNAL_FILTER_EWMA} filter.
+	 */
+	public static final float SIGNAL_FILTER_ALPHA_DEFAULT = 0.3f;
+
+	/**
+	 * The default process noise of the {@link #SIGNAL_FILTER_KALMAN} filter.
+	 */
+	public static final float SIGNAL_FILTER_PROCESS_NOISE_DEFAULT = 0.01f;
+
+	/**
+	 * The default measurement noise of the {@link #SIGNAL_FILTER_KALMAN} filter.
+	 */
+	public static final float SIGNAL_FILTER_MEASUREMENT_NOISE_DEFAULT = 3.0f;
+
+	/**
+	 * The default path loss exponent used for distance estimation, valid in free space.
+	 */
+	public static final float PATH_LOSS_EXPONENT_DEFAULT = 2.0f;
+
+	/**
+	 * The scan does not affect the scan and rest intervals if scans with higher priority
+	 * are running.
+	 *
+	 * @see Builder#setPriority(int)
+	 */
+	public static final int PRIORITY_LOW = 0;
+
+	/**
+	 * The default priority.
+	 *
+	 * @see Builder#setPriority(int)
+	 */
+	public static final int PRIORITY_NORMAL = 1;
+
+	/**
+	 * The scan and rest intervals of this scan take precedence over scans with lower priority.
+	 *
+	 * @see Builder#setPriority(int)
+	 */
+	public static final int PRIORITY_HIGH = 2;
+
 	/**
 	 * Pre-Lollipop scanning requires a wakelock and the CPU cannot go to sleep.
 	 * To conserve power we can optionally scan for a certain duration (scan interval)
@@ -179,6 +291,59 @@ public final class ScanSettings implements Parcelable {
 
 	private final int phy;
 
+	// Maximum number of results waiting for delivery, 0 if not limited
+	private final int deliveryQueueCapacity;
+
+	private final int deliveryOverflowPolicy;
+
+	// Minimum time between reports of the same device, 0 if disabled
+	private final long deviceReportIntervalMillis;
+
+	// Which packet of each device is kept in an emulated batch
+	private final int batchPolicy;
+
+	// RSSI filter applied to results of each device, and its parameters
+	private final int signalFilter;
+	private final float signalFilterAlpha;
+	private final float signalFilterProcessNoise;
+	private final float signalFilterMeasurementNoise;
+
+	// Path loss exponent used for distance estimation
+	private final float pathLossExponent;
+
+	// Whether a device is reported only when its advertisement changes, or its RSSI changes
+	// by at least the threshold, if the threshold is > 0
+	private final boolean reportOnPayloadChangeOnly;
+	private final int payloadChangeRssiThreshold;
+
+	// Bounds and target batch size of the adaptive report delay, target 0 if disabled
+	private final long minReportDelayMillis;
+	private final long maxReportDelayMillis;
+	private final int targetBatchSize;
+
+	// Whether devices in range are kept ordered by signal strength
+	private final boolean trackStrongestDevices;
+
+	// Whether power save intervals were set explicitly, and should be used on all API levels
+	private final boolean explicitPowerSave;
+
+	// Upper bound of the adaptive power save rest interval, 0 if the rest interval is fixed
+	private final long powerSaveMaxRestInterval;
+
+	// Priority of the scan when its settings are merged with other scans
+	private final int priority;
+
+	// Minimum time without results after which the native scan is restarted, 0 if disabled
+	private final long stallTimeoutMillis;
+
+	// Whether unfiltered native scans are restarted before the system downgrades them
+	private final boolean unfilteredScanRotation;
+
+	// Limits of the window coalescing PendingIntent results, disabled if max results is 0
+	private final int coalescingMaxResults;
+	private final int coalescingMaxBytes;
+	private final long coalescingMaxLatencyMillis;
+
 	public int getScanMode() {
 		return scanMode;
 	}
@@ -199,8 +364,12 @@ public final class ScanSettings implements Parcelable {
 		return useHardwareFilteringIfSupported;
 	}
 
+	/**
+	 * Returns whether hardware batching should be used, if supported. Hardware batching is
+	 * never used with the adaptive report delay.
+	 */
 	public boolean getUseHardwareBatchingIfSupported() {
-		return useHardwareBatchingIfSupported;
+		return useHardwareBatchingIfSupported && !hasAdaptiveReportDelay();
 	}
 
 	public boolean getUseHardwareCallbackTypesIfSupported() {
@@ -248,6 +417,184 @@ public final class ScanSettings implements Parcelable {
 		return reportDelayMillis;
 	}
 
+	/**
+	 * Returns the minimum time between reports of the same device in milliseconds,
+	 * or 0 if every packet is reported.
+	 */
+	public long getDeviceReportIntervalMillis() {
+		return deviceReportIntervalMillis;
+	}
+
+	/**
+	 * Returns which packet of each device is kept in an emulated batch.
+	 */
+	public int getBatchPolicy() {
+		return batchPolicy;
+	}
+
+	/**
+	 * Returns the RSSI filter applied to results of each device, one of
+	 * {@link #SIGNAL_FILTER_NONE}, {@link #SIGNAL_FILTER_EWMA} or {@link #SIGNAL_FILTER_KALMAN}.
+	 */
+	public int getSignalFilter() {
+		return signalFilter;
+	}
+
+	/**
+	 * Returns the weight of a new RSSI value in the {@link #SIGNAL_FILTER_EWMA} filter.
+	 */
+	public float getSignalFilterAlpha() {
+		return signalFilterAlpha;
+	}
+
+	/**
+	 * Returns the process noise of the {@link #SIGNAL_FILTER_KALMAN} filter.
+	 */
+	public float getSignalFilterProcessNoise() {
+		return signalFilterProcessNoise;
+	}
+
+	/**
+	 * Returns the measurement noise of the {@link #SIGNAL_FILTER_KALMAN} filter.
+	 */
+	public float getSignalFilterMeasurementNoise() {
+		return signalFilterMeasurementNoise;
+	}
+
+	/**
+	 * Returns the path loss exponent used for distance estimation.
+	 */
+	public float getPathLossExponent() {
+		return pathLossExponent;
+	}
+
+	/**
+	 * Returns whether a device is reported only when its advertisement changes.
+	 */
+	public boolean getReportOnPayloadChangeOnly() {
+		return reportOnPayloadChangeOnly;
+	}
+
+	/**
+	 * Returns the RSSI change in dB which causes a device to be reported even if its
+	 * advertisement has not changed, or 0 if RSSI changes are not reported.
+	 */
+	public int getPayloadChangeRssiThreshold() {
+		return payloadChangeRssiThreshold;
+	}
+
+	/**
+	 * Returns whether the report delay is adjusted to the rate at which devices are found.
+	 *
+	 * @see Builder#setAdaptiveReportDelay(long, long, int)
+	 */
+	public boolean hasAdaptiveReportDelay() {
+		return targetBatchSize > 0;
+	}
+
+	/**
+	 * Returns the lower bound of the adaptive report delay in milliseconds.
+	 */
+	public long getMinReportDelayMillis() {
+		return minReportDelayMillis;
+	}
+
+	/**
+	 * Returns the upper bound of the adaptive report delay in milliseconds.
+	 */
+	public long getMaxReportDelayMillis() {
+		return maxReportDelayMillis;
+	}
+
+	/**
+	 * Returns the number of results in a batch that the adaptive report delay aims for,
+	 * or 0 if the report delay is fixed.
+	 */
+	public int getTargetBatchSize() {
+		return targetBatchSize;
+	}
+
+	/**
+	 * Returns whether devices in range are kept ordered by signal strength.
+	 *
+	 * @see Builder#setTrackStrongestDevices(boolean)
+	 */
+	public boolean getTrackStrongestDevices() {
+		return trackStrongestDevices;
+	}
+
+	/**
+	 * Returns the priority of the scan, one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL}
+	 * or {@link #PRIORITY_HIGH}.
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Returns the minimum time without results after which the native scan is considered
+	 * stalled and restarted, or 0 if the stall watchdog is disabled.
+	 *
+	 * @see Builder#setStallWatchdog(long)
+	 */
+	public long getStallTimeoutMillis() {
+		return stallTimeoutMillis;
+	}
+
+	/**
+	 * Returns whether unfiltered native scans are restarted before the system downgrades them
+	 * to opportunistic scans.
+	 *
+	 * @see Builder#setUnfilteredScanRotation(boolean)
+	 */
+	public boolean getUnfilteredScanRotation() {
+		return unfilteredScanRotation;
+	}
+
+	/**
+	 * Returns the maximum number of results delivered in a single {@link android.app.PendingIntent},
+	 * or 0 if coalescing is disabled.
+	 *
+	 * @see Builder#setPendingIntentCoalescing(int, int, long)
+	 */
+	public int getCoalescingMaxResults() {
+		return coalescingMaxResults;
+	}
+
+	/**
+	 * Returns the maximum estimated size in bytes of results delivered in a single
+	 * {@link android.app.PendingIntent}.
+	 *
+	 * @see Builder#setPendingIntentCoalescing(int, int, long)
+	 */
+	public int getCoalescingMaxBytes() {
+		return coalescingMaxBytes;
+	}
+
+	/**
+	 * Returns the maximum time in milliseconds a result may wait for delivery in a
+	 * {@link android.app.PendingIntent}.
+	 *
+	 * @see Builder#setPendingIntentCoalescing(int, int, long)
+	 */
+	public long getCoalescingMaxLatencyMillis() {
+		return coalescingMaxLatencyMillis;
+	}
+
+	/**
+	 * Returns the maximum number of scan results waiting for delivery, or 0 if not limited.
+	 */
+	public int getDeliveryQueueCapacity() {
+		return deliveryQueueCapacity;
+	}
+
+	/**
+	 * Returns the policy used when the delivery queue is full.
+	 */
+	public int getDeliveryOverflowPolicy() {
+		return deliveryOverflowPolicy;
+	}
+
 	private ScanSettings(final int scanMode, final int callbackType,
 						 final long reportDelayMillis,
 						 final int matchMode, final int numOfMatchesPerFilter,
@@ -256,7 +603,25 @@ public final class ScanSettings implements Parcelable {
 						 final boolean hardwareBatching,
 						 final boolean hardwareCallbackTypes,
 						 final long matchTimeout, final long taskInterval,
-						 final long powerSaveScanInterval, final long powerSaveRestInterval) {
+						 final long powerSaveScanInterval, final long powerSaveRestInterval,
+						 final int deliveryQueueCapacity, final int deliveryOverflowPolicy,
+						 final long deviceReportIntervalMillis, final int batchPolicy,
+						 final int signalFilter, final float signalFilterAlpha,
+						 final float signalFilterProcessNoise,
+						 final float signalFilterMeasurementNoise,
+						 final float pathLossExponent,
+						 final boolean reportOnPayloadChangeOnly, final int payloadChangeRssiThreshold,
+						 final long minReportDelayMillis, final long maxReportDelayMillis,
+						 final int targetBatchSize,
+						 final boolean trackStrongestDevices,
+						 final boolean explicitPowerSave,
+						 final long powerSaveMaxRestInterval,
+						 final int priority,
+						 final long stallTimeoutMillis,
+						 final boolean unfilteredScanRotation,
+						 final int coalescingMaxResults,
+						 final int coalescingMaxBytes,
+						 final long coalescingMaxLatencyMillis) {
 		this.scanMode = scanMode;
 		this.callbackType = callbackType;
 		this.reportDelayMillis = reportDelayMillis;
@@ -271,6 +636,29 @@ public final class ScanSettings implements Parcelable {
 		this.matchLostTaskInterval = taskInterval;
 		this.powerSaveScanInterval = powerSaveScanInterval;
 		this.powerSaveRestInterval = powerSaveRestInterval;
+		this.deliveryQueueCapacity = deliveryQueueCapacity;
+		this.deliveryOverflowPolicy = deliveryOverflowPolicy;
+		this.deviceReportIntervalMillis = deviceReportIntervalMillis;
+		this.batchPolicy = batchPolicy;
+		this.signalFilter = signalFilter;
+		this.signalFilterAlpha = signalFilterAlpha;
+		this.signalFilterProcessNoise = signalFilterProcessNoise;
+		this.signalFilterMeasurementNoise = signalFilterMeasurementNoise;
+		this.pathLossExponent = pathLossExponent;
+		this.reportOnPayloadChangeOnly = reportOnPayloadChangeOnly;
+		this.payloadChangeRssiThreshold = payloadChangeRssiThreshold;
+		this.minReportDelayMillis = minReportDelayMillis;
+		this.maxReportDelayMillis = maxReportDelayMillis;
+		this.targetBatchSize = targetBatchSize;
+		this.trackStrongestDevices = trackStrongestDevices;
+		this.explicitPowerSave = explicitPowerSave;
+		this.powerSaveMaxRestInterval = powerSaveMaxRestInterval;
+		this.priority = priority;
+		this.stallTimeoutMillis = stallTimeoutMillis;
+		this.unfilteredScanRotation = unfilteredScanRotation;
+		this.coalescingMaxResults = coalescingMaxResults;
+		this.coalescingMaxBytes = coalescingMaxBytes;
+		this.coalescingMaxLatencyMillis = coalescingMaxLatencyMillis;
 	}
 
 	private ScanSettings(final Parcel in) {
@@ -283,10 +671,34 @@ public final class ScanSettings implements Parcelable {
 		phy = in.readInt();
 		useHardwareFilteringIfSupported = in.readInt() == 1;
 		useHardwareBatchingIfSupported = in.readInt() == 1;
+		useHardwareCallbackTypesIfSupported = in.readInt() == 1;
 		matchLostDeviceTimeout = in.readLong();
 		matchLostTaskInterval = in.readLong();
 		powerSaveScanInterval = in.readLong();
 		powerSaveRestInterval = in.readLong();
+		deliveryQueueCapacity = in.readInt();
+		deliveryOverflowPolicy = in.readInt();
+		deviceReportIntervalMillis = in.readLong();
+		batchPolicy = in.readInt();
+		signalFilter = in.readInt();
+		signalFilterAlpha = in.readFloat();
+		signalFilterProcessNoise = in.readFloat();
+		signalFilterMeasurementNoise = in.readFloat();
+		pathLossExponent = in.readFloat();
+		reportOnPayloadChangeOnly = in.readInt() == 1;
+		payloadChangeRssiThreshold = in.readInt();
+		minReportDelayMillis = in.readLong();
+		maxReportDelayMillis = in.readLong();
+		targetBatchSize = in.readInt();
+		trackStrongestDevices = in.readInt() == 1;
+		explicitPowerSave = in.readInt() == 1;
+		powerSaveMaxRestInterval = in.readLong();
+		priority = in.readInt();
+		stallTimeoutMillis = in.readLong();
+		unfilteredScanRotation = in.readInt() == 1;
+		coalescingMaxResults = in.readInt();
+		coalescingMaxBytes = in.readInt();
+		coalescingMaxLatencyMillis = in.readLong();
 	}
 
 	@Override
@@ -300,10 +712,34 @@ public final class ScanSettings implements Parcelable {
 		dest.writeInt(phy);
 		dest.writeInt(useHardwareFilteringIfSupported ? 1 : 0);
 		dest.writeInt(useHardwareBatchingIfSupported ? 1 : 0);
+		dest.writeInt(useHardwareCallbackTypesIfSupported ? 1 : 0);
 		dest.writeLong(matchLostDeviceTimeout);
 		dest.writeLong(matchLostTaskInterval);
 		dest.writeLong(powerSaveScanInterval);
 		dest.writeLong(powerSaveRestInterval);
+		dest.writeInt(deliveryQueueCapacity);
+		dest.writeInt(deliveryOverflowPolicy);
+		dest.writeLong(deviceReportIntervalMillis);
+		dest.writeInt(batchPolicy);
+		dest.writeInt(signalFilter);
+		dest.writeFloat(signalFilterAlpha);
+		dest.writeFloat(signalFilterProcessNoise);
+		dest.writeFloat(signalFilterMeasurementNoise);
+		dest.writeFloat(pathLossExponent);
+		dest.writeInt(reportOnPayloadChangeOnly ? 1 : 0);
+		dest.writeInt(payloadChangeRssiThreshold);
+		dest.writeLong(minReportDelayMillis);
+		dest.writeLong(maxReportDelayMillis);
+		dest.writeInt(targetBatchSize);
+		dest.writeInt(trackStrongestDevices ? 1 : 0);
+		dest.writeInt(explicitPowerSave ? 1 : 0);
+		dest.writeLong(powerSaveMaxRestInterval);
+		dest.writeInt(priority);
+		dest.writeLong(stallTimeoutMillis);
+		dest.writeInt(unfilteredScanRotation ? 1 : 0);
+		dest.writeInt(coalescingMaxResults);
+		dest.writeInt(coalescingMaxBytes);
+		dest.writeLong(coalescingMaxLatencyMillis);
 	}
 
 	@Override
@@ -311,6 +747,49 @@ public final class ScanSettings implements Parcelable {
 		return 0;
 	}
 
+	/**
+	 * Returns the settings as bytes, to be stored in an intent extra that is delivered to
+	 * another application. A custom {@link Parcelable} could not be read there.
+	 *
+	 * @see #unmarshall(byte[])
+	 */
+	@NonNull
+	/* package */ byte[] marshall() {
+		final Parcel parcel = Parcel.obtain();
+		try {
+			writeToParcel(parcel, 0);
+			// The length of the settings is written at the end to detect a different layout.
+			parcel.writeInt(parcel.dataPosition());
+			return parcel.marshall();
+		} finally {
+			parcel.recycle();
+		}
+	}
+
+	/**
+	 * Reads settings written by {@link #marshall()}.
+	 *
+	 * @return The settings, or null if the bytes were written by a different version of
+	 * this class, for example before the app was updated.
+	 */
+	@Nullable
+	/* package */ static ScanSettings unmarshall(@Nullable final byte[] bytes) {
+		if (bytes == null)
+			return null;
+		final Parcel parcel = Parcel.obtain();
+		try {
+			parcel.unmarshall(bytes, 0, bytes.length);
+			parcel.setDataPosition(0);
+			final ScanSettings settings = CREATOR.createFromParcel(parcel);
+			final int length = parcel.dataPosition();
+			return parcel.readInt() == length && parcel.dataAvail() == 0 ? settings : null;
+		} catch (final RuntimeException e) {
+			return null;
+		} finally {
+			parcel.recycle();
+		}
+	}
+
 	public static final Parcelable.Creator<ScanSettings> CREATOR = new Creator<ScanSettings>() {
 		@Override
 		public ScanSettings[] newArray(final int size) {
@@ -338,6 +817,32 @@ public final class ScanSettings implements Parcelable {
 		return powerSaveScanInterval;
 	}
 
+	/**
+	 * Returns whether the power save intervals were set using
+	 * {@link Builder#setPowerSave(long, long)}. Such intervals are used also on Lollipop and
+	 * newer, while the default ones, based on the scan mode, only on pre-Lollipop devices.
+	 */
+	/* package */ boolean hasExplicitPowerSave() {
+		return explicitPowerSave && hasPowerSaveMode();
+	}
+
+	/**
+	 * Returns whether the power save rest interval adapts to the number of new devices found.
+	 *
+	 * @see Builder#setAdaptivePowerSave(long, long, long)
+	 */
+	public boolean hasAdaptivePowerSave() {
+		return hasPowerSaveMode() && powerSaveMaxRestInterval > powerSaveRestInterval;
+	}
+
+	/**
+	 * Returns the maximum power save rest interval. For fixed intervals this is the same as
+	 * {@link #getPowerSaveRest()}.
+	 */
+	public long getPowerSaveMaxRest() {
+		return hasAdaptivePowerSave() ? powerSaveMaxRestInterval : powerSaveRestInterval;
+	}
+
 	/**
 	 * Builder for {@link ScanSettings}.
 	 */
@@ -357,6 +862,29 @@ public final class ScanSettings implements Parcelable {
 		private long matchLostTaskInterval = MATCH_LOST_TASK_INTERVAL_DEFAULT;
 		private long powerSaveRestInterval = 0;
 		private long powerSaveScanInterval = 0;
+		private int deliveryQueueCapacity = 0;
+		private int deliveryOverflowPolicy = OVERFLOW_POLICY_DROP_OLDEST;
+		private long deviceReportIntervalMillis = 0;
+		private int batchPolicy = BATCH_POLICY_KEEP_FIRST;
+		private int signalFilter = SIGNAL_FILTER_NONE;
+		private float signalFilterAlpha = SIGNAL_FILTER_ALPHA_DEFAULT;
+		private float signalFilterProcessNoise = SIGNAL_FILTER_PROCESS_NOISE_DEFAULT;
+		private float signalFilterMeasurementNoise = SIGNAL_FILTER_MEASUREMENT_NOISE_DEFAULT;
+		private float pathLossExponent = PATH_LOSS_EXPONENT_DEFAULT;
+		private boolean reportOnPayloadChangeOnly = false;
+		private int payloadChangeRssiThreshold = 0;
+		private long minReportDelayMillis = 0;
+		private long maxReportDelayMillis = 0;
+		private int targetBatchSize = 0;
+		private boolean trackStrongestDevices = false;
+		private boolean explicitPowerSave = false;
+		private long powerSaveMaxRestInterval = 0;
+		private int priority = PRIORITY_NORMAL;
+		private long stallTimeoutMillis = 0;
+		private boolean unfilteredScanRotation = false;
+		private int coalescingMaxResults = 0;
+		private int coalescingMaxBytes = 0;
+		private long coalescingMaxLatencyMillis = 0;
 
 		/**
 		 * Set scan mode for Bluetooth LE scan.
@@ -431,6 +959,328 @@ public final class ScanSettings implements Parcelable {
 			return this;
 		}
 
+		/**
+		 * Enables the adaptive report delay. The interval between batches is adjusted after
+		 * each batch, based on the rate at which devices are added to batches, so that each
+		 * batch contains close to the target number of results. When few devices are around,
+		 * the interval grows up to the max bound, and shrinks down to the min bound with
+		 * heavy traffic.
+		 * <p>
+		 * The delay set with {@link #setReportDelay(long)}, or the min bound if not set, is used
+		 * as the initial interval. This is a compat feature, so hardware batching is not used
+		 * in this mode.
+		 *
+		 * @param minDelayMillis  the shortest interval between batches, in milliseconds.
+		 * @param maxDelayMillis  the longest interval between batches, in milliseconds.
+		 * @param targetBatchSize the desired number of results in a batch, or 0 to disable
+		 *                        the adaptive report delay (default).
+		 * @throws IllegalArgumentException If {@code minDelayMillis} &lt;= 0,
+		 *                                  {@code maxDelayMillis} &lt; {@code minDelayMillis}
+		 *                                  or {@code targetBatchSize} &lt; 0.
+		 */
+		@NonNull
+		public Builder setAdaptiveReportDelay(final long minDelayMillis, final long maxDelayMillis,
+											  final int targetBatchSize) {
+			if (minDelayMillis <= 0) {
+				throw new IllegalArgumentException("minDelayMillis must be > 0");
+			}
+			if (maxDelayMillis < minDelayMillis) {
+				throw new IllegalArgumentException("maxDelayMillis must be >= minDelayMillis");
+			}
+			if (targetBatchSize < 0) {
+				throw new IllegalArgumentException("targetBatchSize must be >= 0");
+			}
+			this.minReportDelayMillis = minDelayMillis;
+			this.maxReportDelayMillis = maxDelayMillis;
+			this.targetBatchSize = targetBatchSize;
+			return this;
+		}
+
+		/**
+		 * When enabled, devices matching the filters are kept ordered by their smoothed RSSI,
+		 * so that the strongest ones can be obtained at any time using
+		 * {@link BluetoothLeScannerCompat#getStrongestDevices(ScanCallback, int)} without
+		 * sorting all results. Devices are removed when they were not seen for the match lost
+		 * device timeout.
+		 * <p>
+		 * This is a compat feature, not available when scanning with a
+		 * {@link android.app.PendingIntent}.
+		 *
+		 * @param track whether devices should be ordered by signal strength.
+		 * @see #setEwmaSignalFilter(float)
+		 * @see #setKalmanSignalFilter(float, float)
+		 */
+		@NonNull
+		public Builder setTrackStrongestDevices(final boolean track) {
+			trackStrongestDevices = track;
+			return this;
+		}
+
+		/**
+		 * Sets the priority of the scan. Pre-Lollipop devices run a single native scan for all
+		 * scans started by the app, so their settings have to be merged. The scan and rest
+		 * intervals are taken from the scans with the highest priority only: the shortest
+		 * intervals are used, and if any of them scans continuously (for example using
+		 * {@link #SCAN_MODE_LOW_LATENCY}), so does the native scan. Scans with lower priority
+		 * receive results whenever the native scan is running.
+		 * <p>
+		 * The priority has no effect on Lollipop and newer, where each scan is started
+		 * natively with its own settings.
+		 *
+		 * @param priority one of {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} (default) or
+		 *                 {@link #PRIORITY_HIGH}.
+		 * @throws IllegalArgumentException If the {@code priority} is invalid.
+		 */
+		@NonNull
+		public Builder setPriority(final int priority) {
+			if (priority < PRIORITY_LOW || priority > PRIORITY_HIGH) {
+				throw new IllegalArgumentException("invalid priority " + priority);
+			}
+			this.priority = priority;
+			return this;
+		}
+
+		/**
+		 * Enables the stall watchdog. On some devices long running scans silently stop
+		 * delivering results, without {@link ScanCallback#onScanFailed(int)} being called.
+		 * The watchdog learns the average interval between results received from the Bluetooth
+		 * stack and restarts the native scan if no result was received for 10 such intervals,
+		 * but not sooner than after {@code minTimeoutMillis}. Emulated state, like
+		 * devices found, batches or filtered signal, is kept during the restart.
+		 * <p>
+		 * Set the timeout long enough not to restart the scan when no device is in range.
+		 * If a restart brings no results, the timeout is doubled, and after 4 such restarts
+		 * the scan is not restarted again until a result is received.
+		 * Scans paused for a power save rest interval are not restarted. On Android Nougat and
+		 * newer a restart is skipped if it would exceed the scan start limit.
+		 * The number of restarts and stall durations are available from
+		 * {@link BluetoothLeScannerCompat#getScanStatistics(ScanCallback)}.
+		 * <p>
+		 * This is a compat feature, not supported natively. It has no effect on scans
+		 * with a {@link android.app.PendingIntent} on Android Oreo or newer.
+		 *
+		 * @param minTimeoutMillis the minimum time without results before the scan is
+		 *                         restarted, or 0 to disable the watchdog (default).
+		 * @throws IllegalArgumentException If {@code minTimeoutMillis} is negative.
+		 */
+		@NonNull
+		public Builder setStallWatchdog(final long minTimeoutMillis) {
+			if (minTimeoutMillis < 0) {
+				throw new IllegalArgumentException("minTimeoutMillis must be >= 0");
+			}
+			stallTimeoutMillis = minTimeoutMillis;
+			return this;
+		}
+
+		/**
+		 * Starting from Android Nougat, native scans without filters running for longer than
+		 * 30 minutes are silently downgraded to opportunistic scans, which receive results only
+		 * when another app is scanning. With rotation enabled, such scans are stopped and
+		 * started again after 25 minutes, so they keep receiving results. The scan is restarted
+		 * immediately after being stopped, but a restart is postponed if it would exceed the
+		 * scan start limit.
+		 * <p>
+		 * A scan is unfiltered natively if no filters are set, or if the filters are emulated,
+		 * see {@link #setUseHardwareFilteringIfSupported(boolean)}. The number of rotations and
+		 * the gaps between stopping the scan and the first result received after the restart
+		 * are available from {@link BluetoothLeScannerCompat#getScanStatistics(ScanCallback)}.
+		 * <p>
+		 * This is a compat feature. It has no effect on devices older than Android Nougat,
+		 * or on scans with a {@link android.app.PendingIntent} on Android Oreo or newer.
+		 *
+		 * @param rotate whether unfiltered scans should be rotated. Default: false.
+		 */
+		@NonNull
+		public Builder setUnfilteredScanRotation(final boolean rotate) {
+			unfilteredScanRotation = rotate;
+			return this;
+		}
+
+		/**
+		 * Scans started with a {@link android.app.PendingIntent} send an intent for every
+		 * result received with {@link #CALLBACK_TYPE_ALL_MATCHES} and no report delay, which
+		 * costs an IPC call and a wake up of the receiver for every advertising packet.
+		 * With coalescing enabled, such results are gathered and sent together in
+		 * {@link BluetoothLeScannerCompat#EXTRA_LIST_SCAN_RESULT} of a single intent when
+		 * any of the limits is reached. Results of other callback types and errors are sent
+		 * immediately, after any gathered results.
+		 * <p>
+		 * The size of a result is estimated from the length of its scan record. Results
+		 * waiting for delivery are lost if the process is killed.
+		 * <p>
+		 * This is a compat feature, not supported natively. It has no effect on scans
+		 * with a {@link ScanCallback}.
+		 *
+		 * @param maxResults       the maximum number of results sent in a single intent.
+		 * @param maxBytes         the maximum estimated size of results sent in a single intent.
+		 * @param maxLatencyMillis the maximum time a result may wait for delivery.
+		 * @throws IllegalArgumentException If any of the limits is not positive.
+		 */
+		@NonNull
+		public Builder setPendingIntentCoalescing(final int maxResults, final int maxBytes,
+												  final long maxLatencyMillis) {
+			if (maxResults < 1) {
+				throw new IllegalArgumentException("maxResults must be >= 1");
+			}
+			if (maxBytes <= 0 || maxLatencyMillis <= 0) {
+				throw new IllegalArgumentException("maxBytes and maxLatencyMillis must be > 0");
+			}
+			coalescingMaxResults = maxResults;
+			coalescingMaxBytes = maxBytes;
+			coalescingMaxLatencyMillis = maxLatencyMillis;
+			return this;
+		}
+
+		/**
+		 * Sets which packet of each device is kept in a batch when batching is emulated.
+		 * Each device appears in a batch at most once, in the order it was first seen in the
+		 * report delay window.
+		 * <p>
+		 * This is a compat feature, not supported natively. Batches created by the hardware
+		 * are delivered as they are.
+		 *
+		 * @param batchPolicy one of {@link #BATCH_POLICY_KEEP_FIRST} (default),
+		 *                    {@link #BATCH_POLICY_KEEP_LATEST} or
+		 *                    {@link #BATCH_POLICY_KEEP_STRONGEST}.
+		 * @throws IllegalArgumentException If the {@code batchPolicy} is invalid.
+		 */
+		@NonNull
+		public Builder setBatchPolicy(final int batchPolicy) {
+			if (batchPolicy < BATCH_POLICY_KEEP_FIRST || batchPolicy > BATCH_POLICY_KEEP_STRONGEST) {
+				throw new IllegalArgumentException("invalid batchPolicy " + batchPolicy);
+			}
+			this.batchPolicy = batchPolicy;
+			return this;
+		}
+
+		/**
+		 * Enables smoothing of RSSI values of each device using an exponentially weighted
+		 * moving average. The smoothed value and the estimated distance are available from
+		 * {@link ScanResult#getSmoothedRssi()} and {@link ScanResult#getEstimatedDistance()}.
+		 * <p>
+		 * This is a compat feature, not supported natively.
+		 *
+		 * @param alpha the weight of a new RSSI value, in range (0, 1]. Lower values give
+		 *              smoother, but slower reacting results. The default is
+		 *              {@link #SIGNAL_FILTER_ALPHA_DEFAULT}.
+		 * @throws IllegalArgumentException If {@code alpha} is out of range.
+		 */
+		@NonNull
+		public Builder setEwmaSignalFilter(final float alpha) {
+			if (!(alpha > 0 && alpha <= 1)) {
+				throw new IllegalArgumentException("alpha must be in range (0, 1]");
+			}
+			signalFilter = SIGNAL_FILTER_EWMA;
+			signalFilterAlpha = alpha;
+			return this;
+		}
+
+		/**
+		 * Enables smoothing of RSSI values of each device using a one-dimensional Kalman
+		 * filter, which assumes the real signal strength is constant with some process noise.
+		 * The smoothed value and the estimated distance are available from
+		 * {@link ScanResult#getSmoothedRssi()} and {@link ScanResult#getEstimatedDistance()}.
+		 * <p>
+		 * This is a compat feature, not supported natively.
+		 *
+		 * @param processNoise     how much the real signal strength is expected to change between
+		 *                         packets. The default is {@link #SIGNAL_FILTER_PROCESS_NOISE_DEFAULT}.
+		 * @param measurementNoise the variance of received RSSI values. The default is
+		 *                         {@link #SIGNAL_FILTER_MEASUREMENT_NOISE_DEFAULT}.
+		 * @throws IllegalArgumentException If any of the values is not positive.
+		 */
+		@NonNull
+		public Builder setKalmanSignalFilter(final float processNoise, final float measurementNoise) {
+			if (!(processNoise > 0) || !(measurementNoise > 0)) {
+				throw new IllegalArgumentException("noise values must be > 0");
+			}
+			signalFilter = SIGNAL_FILTER_KALMAN;
+			signalFilterProcessNoise = processNoise;
+			signalFilterMeasurementNoise = measurementNoise;
+			return this;
+		}
+
+		/**
+		 * Sets the path loss exponent used to estimate the distance to a device from the
+		 * smoothed RSSI, when a signal filter is enabled. Typical values are 2 in free space
+		 * and 2.7 - 4 indoors.
+		 *
+		 * @param exponent the path loss exponent. The default is {@link #PATH_LOSS_EXPONENT_DEFAULT}.
+		 * @throws IllegalArgumentException If {@code exponent} is not positive.
+		 */
+		@NonNull
+		public Builder setPathLossExponent(final float exponent) {
+			if (!(exponent > 0)) {
+				throw new IllegalArgumentException("exponent must be > 0");
+			}
+			pathLossExponent = exponent;
+			return this;
+		}
+
+		/**
+		 * When enabled, a device is reported with {@link #CALLBACK_TYPE_ALL_MATCHES} only when
+		 * its advertising data differ from the data last reported for this device. The first
+		 * packet from each device is always reported.
+		 * <p>
+		 * This is a compat feature, not supported natively. It is ignored for other callback
+		 * types and when the report delay is set.
+		 *
+		 * @param enabled whether only changed advertisements should be reported.
+		 * @see #setReportOnPayloadChangeOnly(boolean, int)
+		 */
+		@NonNull
+		public Builder setReportOnPayloadChangeOnly(final boolean enabled) {
+			return setReportOnPayloadChangeOnly(enabled, 0);
+		}
+
+		/**
+		 * When enabled, a device is reported with {@link #CALLBACK_TYPE_ALL_MATCHES} only when
+		 * its advertising data differ from the data last reported for this device, or when the
+		 * RSSI differs from the last reported one by at least the given threshold.
+		 * The first packet from each device is always reported.
+		 * <p>
+		 * This is a compat feature, not supported natively. It is ignored for other callback
+		 * types and when the report delay is set.
+		 *
+		 * @param enabled       whether only changed advertisements should be reported.
+		 * @param rssiThreshold the RSSI change in dB which causes the device to be reported,
+		 *                      or 0 to ignore RSSI changes.
+		 * @throws IllegalArgumentException If {@code rssiThreshold} &lt; 0.
+		 */
+		@NonNull
+		public Builder setReportOnPayloadChangeOnly(final boolean enabled, final int rssiThreshold) {
+			if (rssiThreshold < 0) {
+				throw new IllegalArgumentException("rssiThreshold must be >= 0");
+			}
+			reportOnPayloadChangeOnly = enabled;
+			payloadChangeRssiThreshold = rssiThreshold;
+			return this;
+		}
+
+		/**
+		 * Limits how often each device is reported with {@link #CALLBACK_TYPE_ALL_MATCHES}.
+		 * The first packet from a device is reported immediately. Packets received within the
+		 * interval are not reported, instead the next packet after the interval is reported
+		 * with statistics of all packets received since the last report, see
+		 * {@link ScanResult#getRssiCount()}, {@link ScanResult#getRssiMean()} and
+		 * {@link ScanResult#getRssiMax()}.
+		 * <p>
+		 * This is a compat feature, not supported natively. It is ignored for other callback
+		 * types and when the report delay is set.
+		 *
+		 * @param intervalMillis the minimum time between reports of the same device in
+		 *                       milliseconds, or 0 to report every packet (default).
+		 * @throws IllegalArgumentException If {@code intervalMillis} &lt; 0.
+		 */
+		@NonNull
+		public Builder setDeviceReportInterval(final long intervalMillis) {
+			if (intervalMillis < 0) {
+				throw new IllegalArgumentException("intervalMillis must be >= 0");
+			}
+			deviceReportIntervalMillis = intervalMillis;
+			return this;
+		}
+
 		/**
 		 * Set the number of matches for Bluetooth LE scan filters hardware match.
 		 *
@@ -560,13 +1410,16 @@ public final class ScanSettings implements Parcelable {
 		 * The match options are used when the callback type has been set to
 		 * {@link ScanSettings#CALLBACK_TYPE_FIRST_MATCH} or
 		 * {@link ScanSettings#CALLBACK_TYPE_MATCH_LOST} and hardware does not support those types.
-		 * In that case {@link BluetoothLeScannerCompat} starts a task that runs periodically
-		 * and calls {@link ScanCallback#onScanResult(int, ScanResult)} with type
+		 * In that case {@link BluetoothLeScannerCompat} starts a task that calls
+		 * {@link ScanCallback#onScanResult(int, ScanResult)} with type
 		 * {@link #CALLBACK_TYPE_MATCH_LOST} if a device has not been seen for at least given time.
+		 * The task is scheduled for the moment the least recently seen device times out, so
+		 * devices are reported lost without additional delay.
 		 *
 		 * @param deviceTimeoutMillis the time required for the device to be recognized as lost
 		 *                            (default {@link #MATCH_LOST_DEVICE_TIMEOUT_DEFAULT}).
 		 * @param taskIntervalMillis  the task interval (default {@link #MATCH_LOST_TASK_INTERVAL_DEFAULT}).
+		 *                            This value is no longer used and is kept for compatibility.
 		 */
 		@NonNull
 		public Builder setMatchOptions(final long deviceTimeoutMillis, final long taskIntervalMillis) {
@@ -581,8 +1434,17 @@ public final class ScanSettings implements Parcelable {
 		/**
 		 * Pre-Lollipop scanning requires a wakelock and the CPU cannot go to sleep.
 		 * To conserve power we can optionally scan for a certain duration (scan interval)
-		 * and then rest for a time before starting scanning again. Won't affect Lollipop
-		 * or later devices.
+		 * and then rest for a time before starting scanning again.
+		 * <p>
+		 * On Lollipop and newer the native scan is stopped and started again in the same
+		 * intervals, so that the radio-on time is predictable on every API level. As Android
+		 * Nougat and newer allows only 5 scan starts in 30 seconds, rest periods may be
+		 * extended to stay within that limit. All scans with power save are paused and
+		 * resumed together, and each of them costs a start, so with N such scans the rest
+		 * period is extended to at least about 30 s * N / 5. If more than 5 scans are paused,
+		 * they are resumed in groups as the limit allows. Scans with a
+		 * {@link android.app.PendingIntent} on Oreo and newer are not affected, as they are
+		 * run by the system.
 		 *
 		 * @param scanInterval interval in ms to scan at a time.
 		 * @param restInterval interval to sleep for without scanning before scanning again for
@@ -595,6 +1457,74 @@ public final class ScanSettings implements Parcelable {
 			}
 			powerSaveScanInterval = scanInterval;
 			powerSaveRestInterval = restInterval;
+			powerSaveMaxRestInterval = 0;
+			explicitPowerSave = true;
+			return this;
+		}
+
+		/**
+		 * Enables power save mode with a rest interval adapting to the discovery yield.
+		 * The rest interval starts at {@code minRestInterval} and is doubled after every scan
+		 * interval in which no new devices were found, up to {@code maxRestInterval}. As soon
+		 * as a new device is found, it returns to {@code minRestInterval}. A device is new
+		 * if it was not seen in the current or in the previous scan interval.
+		 * <p>
+		 * This saves power when nothing is around, while devices arriving in range are still
+		 * found quickly. When multiple scans are running, the shortest intervals are used and
+		 * the rest interval never exceeds the fixed rest interval of any other scan.
+		 * <p>
+		 * The rest interval adapts only on pre-Lollipop devices. On Lollipop and newer
+		 * {@code minRestInterval} is used as a fixed rest interval, see
+		 * {@link #setPowerSave(long, long)}.
+		 *
+		 * @param scanInterval    interval in ms to scan at a time.
+		 * @param minRestInterval the shortest interval to sleep for, in ms.
+		 * @param maxRestInterval the longest interval to sleep for, in ms.
+		 * @throws IllegalArgumentException If any interval is not positive, or the maximum rest
+		 *                                  interval is shorter than the minimum one.
+		 */
+		@NonNull
+		public Builder setAdaptivePowerSave(final long scanInterval,
+											final long minRestInterval, final long maxRestInterval) {
+			if (maxRestInterval < minRestInterval) {
+				throw new IllegalArgumentException("maxRestInterval must be >= minRestInterval");
+			}
+			setPowerSave(scanInterval, minRestInterval);
+			powerSaveMaxRestInterval = maxRestInterval;
+			return this;
+		}
+
+		/**
+		 * Limits the number of scan results waiting to be delivered to the {@link ScanCallback}.
+		 * By default, every result is posted to the handler or executor, so when the callback
+		 * is slower than the rate of incoming advertisements, the queue grows without limit.
+		 * <p>
+		 * The statistics of dropped results may be obtained using
+		 * {@link BluetoothLeScannerCompat#getScanStatistics(ScanCallback)}.
+		 * <p>
+		 * This setting is ignored when scanning with a {@link android.app.PendingIntent} and
+		 * does not apply to results delivered in batches.
+		 *
+		 * @param capacity       the maximum number of results waiting for delivery, or 0 to
+		 *                       disable the limit (default).
+		 * @param overflowPolicy the policy used when the queue is full, one of
+		 *                       {@link #OVERFLOW_POLICY_DROP_OLDEST} (default),
+		 *                       {@link #OVERFLOW_POLICY_DROP_NEWEST} or
+		 *                       {@link #OVERFLOW_POLICY_COALESCE}.
+		 * @throws IllegalArgumentException If {@code capacity} &lt; 0 or the
+		 *                                  {@code overflowPolicy} is invalid.
+		 */
+		@NonNull
+		public Builder setDeliveryQueue(final int capacity, final int overflowPolicy) {
+			if (capacity < 0) {
+				throw new IllegalArgumentException("capacity must be >= 0");
+			}
+			if (overflowPolicy < OVERFLOW_POLICY_DROP_OLDEST
+					|| overflowPolicy > OVERFLOW_POLICY_COALESCE) {
+				throw new IllegalArgumentException("invalid overflowPolicy " + overflowPolicy);
+			}
+			deliveryQueueCapacity = capacity;
+			deliveryOverflowPolicy = overflowPolicy;
 			return this;
 		}
 
@@ -606,11 +1536,28 @@ public final class ScanSettings implements Parcelable {
 			if (powerSaveRestInterval == 0 && powerSaveScanInterval == 0)
 				updatePowerSaveSettings();
 
+			// The adaptive report delay starts from the fixed one, if set
+			long reportDelayMillis = this.reportDelayMillis;
+			if (targetBatchSize > 0) {
+				reportDelayMillis = reportDelayMillis == 0 ? minReportDelayMillis :
+						Math.max(minReportDelayMillis, Math.min(maxReportDelayMillis, reportDelayMillis));
+			}
+
 			return new ScanSettings(scanMode, callbackType, reportDelayMillis, matchMode,
 					numOfMatchesPerFilter, legacy, phy, useHardwareFilteringIfSupported,
 					useHardwareBatchingIfSupported, useHardwareCallbackTypesIfSupported,
 					matchLostDeviceTimeout, matchLostTaskInterval,
-					powerSaveScanInterval, powerSaveRestInterval);
+					powerSaveScanInterval, powerSaveRestInterval,
+					deliveryQueueCapacity, deliveryOverflowPolicy,
+					deviceReportIntervalMillis, batchPolicy,
+					signalFilter, signalFilterAlpha,
+					signalFilterProcessNoise, signalFilterMeasurementNoise,
+					pathLossExponent,
+					reportOnPayloadChangeOnly, payloadChangeRssiThreshold,
+					minReportDelayMillis, maxReportDelayMillis, targetBatchSize, trackStrongestDevices,
+					explicitPowerSave, powerSaveMaxRestInterval, priority, stallTimeoutMillis,
+					unfilteredScanRotation,
+					coalescingMaxResults, coalescingMaxBytes, coalescingMaxLatencyMillis);
 		}
 
 		/**
@@ -0,0 +1,84 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.os.Build;
+
+/**
+ * Tracks native scan starts of this process. Starting from Android Nougat, an app that starts
+ * scanning more than {@link #MAX_STARTS} times in {@link #PERIOD_MILLIS} is silently given
+ * no results, so starts made by the library itself (power save duty cycling, restarts) have
+ * to be delayed when the limit would be exceeded.
+ */
+/* package */ class ScanStartLimiter {
+	/* package */ static final int MAX_STARTS = 5;
+	/* package */ static final long PERIOD_MILLIS = 30000;
+
+	private static ScanStartLimiter instance;
+
+	/** Whether the limit applies on this platform. */
+	private final boolean enforced;
+	/** Timestamps of the last {@link #MAX_STARTS} starts, in a ring buffer. */
+	private final long[] starts = new long[MAX_STARTS];
+	private int next;
+	private int count;
+
+	static synchronized ScanStartLimiter getInstance() {
+		if (instance == null)
+			instance = new ScanStartLimiter(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N);
+		return instance;
+	}
+
+	/**
+	 * @param enforced whether the limit applies. If not, starts are never delayed.
+	 */
+	/* package */ ScanStartLimiter(final boolean enforced) {
+		this.enforced = enforced;
+	}
+
+	/**
+	 * Records a native scan start.
+	 *
+	 * @param now the current time, from {@link android.os.SystemClock#elapsedRealtime()}.
+	 */
+	synchronized void recordStart(final long now) {
+		starts[next] = now;
+		next = (next + 1) % MAX_STARTS;
+		if (count < MAX_STARTS)
+			count++;
+	}
+
+	/**
+	 * Returns the time in milliseconds after which the given number of scans may be started
+	 * without exceeding the limit, or 0 if they may be started now.
+	 *
+	 * @param number the number of scans to be started, at most {@link #MAX_STARTS}.
+	 * @param now    the current time, from {@link android.os.SystemClock#elapsedRealtime()}.
+	 */
+	synchronized long getDelay(final int number, final long now) {
+		if (!enforced)
+			return 0;
+		// The number of starts that have to expire before the given number of scans may start.
+		final int excess = count + Math.min(number, MAX_STARTS) - MAX_STARTS;
+		if (excess <= 0)
+			return 0;
+		// The oldest start is at the next index, if the buffer is full.
+		final int oldest = count < MAX_STARTS ? 0 : next;
+		final long expiry = starts[(oldest + excess - 1) % MAX_STARTS] + PERIOD_MILLIS;
+		return Math.max(0, expiry - now);
+	}
+
+	/**
+	 * Returns the number of scans that may be started now without exceeding the limit.
+	 *
+	 * @param now the current time, from {@link android.os.SystemClock#elapsedRealtime()}.
+	 */
+	synchronized int getAvailableStarts(final long now) {
+		if (!enforced)
+			return MAX_STARTS;
+		int recent = 0;
+		for (int i = 0; i < count; i++) {
+			if (starts[i] + PERIOD_MILLIS > now)
+				recent++;
+		}
+		return MAX_STARTS - recent;
+	}
+}
@@ -0,0 +1,147 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Statistics of a scan started with a {@link ScanCallback}. Use
+ * {@link BluetoothLeScannerCompat#getScanStatistics(ScanCallback)} to obtain a snapshot.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ScanStatistics {
+	private final long receivedResultCount;
+	private final long droppedResultCount;
+	private final long coalescedResultCount;
+	private final int maxQueuedResultCount;
+	private final int stallRestartCount;
+	private final long totalStallMillis;
+	private final long maxStallMillis;
+	private final int rotationCount;
+	private final long totalScanGapMillis;
+	private final long maxScanGapMillis;
+
+	/* package */ ScanStatistics(final long receivedResultCount,
+								 final long droppedResultCount,
+								 final long coalescedResultCount,
+								 final int maxQueuedResultCount,
+								 final int stallRestartCount,
+								 final long totalStallMillis,
+								 final long maxStallMillis,
+								 final int rotationCount,
+								 final long totalScanGapMillis,
+								 final long maxScanGapMillis) {
+		this.receivedResultCount = receivedResultCount;
+		this.droppedResultCount = droppedResultCount;
+		this.coalescedResultCount = coalescedResultCount;
+		this.maxQueuedResultCount = maxQueuedResultCount;
+		this.stallRestartCount = stallRestartCount;
+		this.totalStallMillis = totalStallMillis;
+		this.maxStallMillis = maxStallMillis;
+		this.rotationCount = rotationCount;
+		this.totalScanGapMillis = totalScanGapMillis;
+		this.maxScanGapMillis = maxScanGapMillis;
+	}
+
+	/**
+	 * Returns the number of scan results received from the Bluetooth stack, not including
+	 * results delivered in batches.
+	 */
+	public long getReceivedResultCount() {
+		return receivedResultCount;
+	}
+
+	/**
+	 * Returns the number of scan results dropped because the delivery queue was full.
+	 *
+	 * @see ScanSettings.Builder#setDeliveryQueue(int, int)
+	 */
+	public long getDroppedResultCount() {
+		return droppedResultCount;
+	}
+
+	/**
+	 * Returns the number of scan results that replaced a result from the same device waiting
+	 * for delivery.
+	 *
+	 * @see ScanSettings#OVERFLOW_POLICY_COALESCE
+	 */
+	public long getCoalescedResultCount() {
+		return coalescedResultCount;
+	}
+
+	/**
+	 * Returns the highest number of scan results that were waiting for delivery at the same time.
+	 */
+	public int getMaxQueuedResultCount() {
+		return maxQueuedResultCount;
+	}
+
+	/**
+	 * Returns the number of times the native scan was restarted by the stall watchdog.
+	 *
+	 * @see ScanSettings.Builder#setStallWatchdog(long)
+	 */
+	public int getStallRestartCount() {
+		return stallRestartCount;
+	}
+
+	/**
+	 * Returns the total duration of stalls, in milliseconds. A stall lasts from the last result
+	 * received before the scan was restarted by the stall watchdog to the first result received
+	 * after the restart.
+	 */
+	public long getTotalStallMillis() {
+		return totalStallMillis;
+	}
+
+	/**
+	 * Returns the duration of the longest stall, in milliseconds.
+	 *
+	 * @see #getTotalStallMillis()
+	 */
+	public long getMaxStallMillis() {
+		return maxStallMillis;
+	}
+
+	/**
+	 * Returns the number of times the unfiltered native scan was rotated.
+	 *
+	 * @see ScanSettings.Builder#setUnfilteredScanRotation(boolean)
+	 */
+	public int getRotationCount() {
+		return rotationCount;
+	}
+
+	/**
+	 * Returns the total duration of gaps caused by rotations, in milliseconds. A gap lasts
+	 * from stopping the native scan to the first result received after it was started again,
+	 * so it also includes the time until a device in range advertises, or the report delay
+	 * if batching is done by the hardware.
+	 */
+	public long getTotalScanGapMillis() {
+		return totalScanGapMillis;
+	}
+
+	/**
+	 * Returns the duration of the longest gap caused by a rotation, in milliseconds.
+	 *
+	 * @see #getTotalScanGapMillis()
+	 */
+	public long getMaxScanGapMillis() {
+		return maxScanGapMillis;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "ScanStatistics{" + "receivedResultCount=" + receivedResultCount +
+				", droppedResultCount=" + droppedResultCount +
+				", coalescedResultCount=" + coalescedResultCount +
+				", maxQueuedResultCount=" + maxQueuedResultCount +
+				", stallRestartCount=" + stallRestartCount +
+				", totalStallMillis=" + totalStallMillis +
+				", maxStallMillis=" + maxStallMillis +
+				", rotationCount=" + rotationCount +
+				", totalScanGapMillis=" + totalScanGapMillis +
+				", maxScanGapMillis=" + maxScanGapMillis + '}';
+	}
+}
@@ -0,0 +1,149 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * A snapshot of a device found by any of the scans started with {@link BluetoothLeScannerCompat}.
+ * Use {@link BluetoothLeScannerCompat#getDevicesInRange()} or
+ * {@link BluetoothLeScannerCompat#getDevice(String)} to obtain it.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class ScannedDevice {
+	@NonNull private final ScanResult lastScanResult;
+	private final long firstSeenNanos;
+	private final long packetCount;
+	private final float rssiMean;
+	private final int rssiMin;
+	private final int rssiMax;
+	private final float advertisingInterval;
+	private final float advertisingIntervalJitter;
+
+	/* package */ ScannedDevice(@NonNull final ScanResult lastScanResult,
+								final long firstSeenNanos,
+								final long packetCount,
+								final float rssiMean, final int rssiMin, final int rssiMax,
+								final float advertisingInterval, final float advertisingIntervalJitter) {
+		this.lastScanResult = lastScanResult;
+		this.firstSeenNanos = firstSeenNanos;
+		this.packetCount = packetCount;
+		this.rssiMean = rssiMean;
+		this.rssiMin = rssiMin;
+		this.rssiMax = rssiMax;
+		this.advertisingInterval = advertisingInterval;
+		this.advertisingIntervalJitter = advertisingIntervalJitter;
+	}
+
+	/**
+	 * Returns the remote Bluetooth device.
+	 */
+	@NonNull
+	public BluetoothDevice getDevice() {
+		return lastScanResult.getDevice();
+	}
+
+	/**
+	 * Returns the last scan result received from the device.
+	 */
+	@NonNull
+	public ScanResult getLastScanResult() {
+		return lastScanResult;
+	}
+
+	/**
+	 * Returns the last scan record received from the device.
+	 */
+	@Nullable
+	public ScanRecord getScanRecord() {
+		return lastScanResult.getScanRecord();
+	}
+
+	/**
+	 * Returns the timestamp when the device was first seen, in nanoseconds since boot.
+	 * A device that was lost and found again is reported as seen for the first time.
+	 */
+	public long getFirstSeenNanos() {
+		return firstSeenNanos;
+	}
+
+	/**
+	 * Returns the timestamp when the device was last seen, in nanoseconds since boot.
+	 */
+	public long getLastSeenNanos() {
+		return lastScanResult.getTimestampNanos();
+	}
+
+	/**
+	 * Returns the number of packets received from the device since it was first seen.
+	 */
+	public long getPacketCount() {
+		return packetCount;
+	}
+
+	/**
+	 * Returns the RSSI of the last packet in dBm.
+	 */
+	public int getRssi() {
+		return lastScanResult.getRssi();
+	}
+
+	/**
+	 * Returns the mean RSSI in dBm of all packets received since the device was first seen.
+	 */
+	public float getRssiMean() {
+		return rssiMean;
+	}
+
+	/**
+	 * Returns the lowest RSSI in dBm received since the device was first seen.
+	 */
+	public int getRssiMin() {
+		return rssiMin;
+	}
+
+	/**
+	 * Returns the highest RSSI in dBm received since the device was first seen.
+	 */
+	public int getRssiMax() {
+		return rssiMax;
+	}
+
+	/**
+	 * Returns the estimated advertising interval of the device in milliseconds, or
+	 * {@link Float#NaN} if only one packet was received.
+	 * <p>
+	 * The value is the median of intervals between received packets. It is close to the
+	 * real advertising interval as long as most packets are received. With low power scan
+	 * modes, or when many packets are lost, the value will be a multiple of the real one.
+	 */
+	public float getAdvertisingIntervalMillis() {
+		return advertisingInterval;
+	}
+
+	/**
+	 * Returns the jitter of the advertising interval in milliseconds, estimated as the
+	 * interquartile range of intervals between received packets, or {@link Float#NaN} if
+	 * only one packet was received.
+	 *
+	 * @see #getAdvertisingIntervalMillis()
+	 */
+	public float getAdvertisingIntervalJitterMillis() {
+		return advertisingIntervalJitter;
+	}
+
+	@NonNull
+	@Override
+	public String toString() {
+		return "ScannedDevice{" + "device=" + getDevice() +
+				", lastSeenNanos=" + getLastSeenNanos() +
+				", packetCount=" + packetCount +
+				", rssi=" + getRssi() +
+				", rssiMean=" + rssiMean +
+				", rssiMin=" + rssiMin +
+				", rssiMax=" + rssiMax +
+				", advertisingInterval=" + advertisingInterval +
+				", advertisingIntervalJitter=" + advertisingIntervalJitter + '}';
+	}
+}
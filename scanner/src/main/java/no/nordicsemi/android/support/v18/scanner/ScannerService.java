@@ -124,6 +124,7 @@ public class ScannerService extends Service {
             } catch (final Exception e) {
                 // Ignore
             }
+            ((PendingIntentExecutor) callback).flushPendingResults();
         }
         callbacks.clear();
         callbacks = null;
@@ -144,7 +145,8 @@ public class ScannerService extends Service {
 
         try {
             final BluetoothLeScannerCompat scannerCompat = BluetoothLeScannerCompat.getScanner();
-            scannerCompat.startScanInternal(filters, settings, executor, handler);
+            scannerCompat.startScanInternal(filters, settings, executor,
+                    ScanCallbackScheduler.of(handler));
         } catch (final Exception e) {
             Log.w(TAG, "Starting scanning failed", e);
         }
@@ -167,6 +169,7 @@ public class ScannerService extends Service {
         } catch (final Exception e) {
             Log.w(TAG, "Stopping scanning failed", e);
         }
+        ((PendingIntentExecutor) callback).flushPendingResults();
 
         if (shouldStop)
             stopSelf();
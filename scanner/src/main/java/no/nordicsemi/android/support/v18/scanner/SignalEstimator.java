@@ -0,0 +1,112 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.LinkedHashMap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Filters RSSI values of each device and estimates the distance to it, as set using
+ * {@link ScanSettings.Builder#setEwmaSignalFilter(float)} or
+ * {@link ScanSettings.Builder#setKalmanSignalFilter(float, float)}.
+ * <p>
+ * This class is not thread safe.
+ */
+/* package */ class SignalEstimator {
+	/**
+	 * The difference between the TX power at 0 m, advertised by devices, and the expected
+	 * RSSI at 1 m.
+	 */
+	private static final int PATH_LOSS_AT_1M = 41;
+
+	private final int filter;
+	private final float alpha;
+	private final float processNoise;
+	private final float measurementNoise;
+	private final float pathLossExponent;
+	private final long deviceTimeoutNanos;
+
+	/**
+	 * Filter state of each device. The map is in access-order, so the first entry is the
+	 * device seen least recently.
+	 */
+	@NonNull private final LinkedHashMap<String, DeviceSignal> devices =
+			new LinkedHashMap<>(16, 0.75f, true);
+
+	SignalEstimator(@NonNull final ScanSettings settings) {
+		this.filter = settings.getSignalFilter();
+		this.alpha = settings.getSignalFilterAlpha();
+		this.processNoise = settings.getSignalFilterProcessNoise();
+		this.measurementNoise = settings.getSignalFilterMeasurementNoise();
+		this.pathLossExponent = settings.getPathLossExponent();
+		this.deviceTimeoutNanos = settings.getMatchLostDeviceTimeout();
+	}
+
+	/**
+	 * Updates the filter state of the device and returns a copy of the result with the
+	 * smoothed RSSI and the estimated distance.
+	 */
+	@NonNull
+	ScanResult apply(@NonNull final ScanResult result) {
+		final String address = result.getDevice().getAddress();
+		final long now = result.getTimestampNanos();
+		final int rssi = result.getRssi();
+
+		DeviceSignal signal = devices.get(address);
+		if (signal == null || now - signal.lastSeenNanos > deviceTimeoutNanos) {
+			// A device that was lost is filtered from scratch.
+			if (signal == null) {
+				DeviceState.forgetEldest(devices, now, deviceTimeoutNanos);
+				signal = new DeviceSignal();
+				devices.put(address, signal);
+			}
+			signal.estimate = rssi;
+			signal.errorCovariance = measurementNoise;
+		} else if (filter == ScanSettings.SIGNAL_FILTER_KALMAN) {
+			final float predictedCovariance = signal.errorCovariance + processNoise;
+			final float gain = predictedCovariance / (predictedCovariance + measurementNoise);
+			signal.estimate += gain * (rssi - signal.estimate);
+			signal.errorCovariance = (1 - gain) * predictedCovariance;
+		} else {
+			signal.estimate += alpha * (rssi - signal.estimate);
+		}
+		signal.lastSeenNanos = now;
+
+		final float distance = estimateDistance(signal.estimate, getTxPower(result), pathLossExponent);
+		return new ScanResult(result, result.getRssiCount(), result.getRssiMean(), result.getRssiMax(),
+				signal.estimate, distance);
+	}
+
+	void clear() {
+		devices.clear();
+	}
+
+	/**
+	 * Returns the TX power advertised by the device, or {@link ScanResult#TX_POWER_NOT_PRESENT}.
+	 */
+	private static int getTxPower(@NonNull final ScanResult result) {
+		final ScanRecord record = result.getScanRecord();
+		if (record != null && record.getTxPowerLevel() != Integer.MIN_VALUE)
+			return record.getTxPowerLevel();
+		return result.getTxPower();
+	}
+
+	/**
+	 * Estimates the distance in meters using the log-distance path loss model.
+	 *
+	 * @param rssi             the received signal strength in dBm.
+	 * @param txPower          the TX power at 0 m in dBm, or {@link ScanResult#TX_POWER_NOT_PRESENT}.
+	 * @param pathLossExponent the path loss exponent.
+	 * @return The estimated distance, or NaN if the TX power is unknown.
+	 */
+	static float estimateDistance(final float rssi, final int txPower, final float pathLossExponent) {
+		if (txPower == ScanResult.TX_POWER_NOT_PRESENT)
+			return Float.NaN;
+		final float rssiAt1m = txPower - PATH_LOSS_AT_1M;
+		return (float) Math.pow(10, (rssiAt1m - rssi) / (10 * pathLossExponent));
+	}
+
+	private static final class DeviceSignal extends DeviceState {
+		private float estimate;
+		private float errorCovariance;
+	}
+}
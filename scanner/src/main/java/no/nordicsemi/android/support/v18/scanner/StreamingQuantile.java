@@ -0,0 +1,125 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.Arrays;
+
+/**
+ * Estimates a quantile of a stream of values in constant memory, using the P-square algorithm
+ * by R. Jain and I. Chlamtac. Five markers are kept: the minimum, the maximum, the estimated
+ * quantile and two markers half way to the extremes. Their heights are adjusted with
+ * a piecewise-parabolic formula as new values arrive.
+ * <p>
+ * This class is not thread safe.
+ */
+/* package */ class StreamingQuantile {
+	private final double p;
+	/** Marker heights. */
+	private final double[] heights = new double[5];
+	/** Actual marker positions, 1-based. */
+	private final int[] positions = new int[5];
+	/** Desired marker positions. */
+	private final double[] desired = new double[5];
+	/** Increments of the desired positions. */
+	private final double[] increments = new double[5];
+	private int count;
+
+	/**
+	 * @param p the quantile to estimate, in range (0, 1), e.g. 0.5 for the median.
+	 */
+	StreamingQuantile(final double p) {
+		if (!(p > 0 && p < 1))
+			throw new IllegalArgumentException("p must be in range (0, 1)");
+		this.p = p;
+		reset();
+	}
+
+	void add(final double value) {
+		if (count < 5) {
+			heights[count++] = value;
+			if (count == 5)
+				Arrays.sort(heights);
+			return;
+		}
+		count++;
+
+		// Find the cell of the value, updating the extremes.
+		final int k;
+		if (value < heights[0]) {
+			heights[0] = value;
+			k = 0;
+		} else if (value >= heights[4]) {
+			heights[4] = Math.max(heights[4], value);
+			k = 3;
+		} else {
+			int i = 1;
+			while (value >= heights[i])
+				i++;
+			k = i - 1;
+		}
+
+		for (int i = k + 1; i < 5; i++)
+			positions[i]++;
+		for (int i = 0; i < 5; i++)
+			desired[i] += increments[i];
+
+		// Adjust heights of the middle markers, if they are off their desired positions.
+		for (int i = 1; i < 4; i++) {
+			final double d = desired[i] - positions[i];
+			if (d >= 1 && positions[i + 1] - positions[i] > 1
+					|| d <= -1 && positions[i - 1] - positions[i] < -1) {
+				final int sign = d > 0 ? 1 : -1;
+				final double height = parabolic(i, sign);
+				if (heights[i - 1] < height && height < heights[i + 1])
+					heights[i] = height;
+				else
+					heights[i] = linear(i, sign);
+				positions[i] += sign;
+			}
+		}
+	}
+
+	/**
+	 * Returns the estimated quantile, or NaN if no values were added.
+	 */
+	double getQuantile() {
+		if (count == 0)
+			return Double.NaN;
+		if (count < 5) {
+			// Too few values for the markers, return the exact quantile.
+			final double[] sorted = Arrays.copyOf(heights, count);
+			Arrays.sort(sorted);
+			return sorted[(int) Math.round(p * (count - 1))];
+		}
+		return heights[2];
+	}
+
+	int getCount() {
+		return count;
+	}
+
+	void reset() {
+		count = 0;
+		for (int i = 0; i < 5; i++)
+			positions[i] = i + 1;
+		desired[0] = 1;
+		desired[1] = 1 + 2 * p;
+		desired[2] = 1 + 4 * p;
+		desired[3] = 3 + 2 * p;
+		desired[4] = 5;
+		increments[0] = 0;
+		increments[1] = p / 2;
+		increments[2] = p;
+		increments[3] = (1 + p) / 2;
+		increments[4] = 1;
+	}
+
+	private double parabolic(final int i, final int d) {
+		final double n = positions[i], nPrev = positions[i - 1], nNext = positions[i + 1];
+		return heights[i] + d / (nNext - nPrev) * (
+				(n - nPrev + d) * (heights[i + 1] - heights[i]) / (nNext - n) +
+				(nNext - n - d) * (heights[i] - heights[i - 1]) / (n - nPrev));
+	}
+
+	private double linear(final int i, final int d) {
+		return heights[i] + d * (heights[i + d] - heights[i]) / (positions[i + d] - positions[i]);
+	}
+}
@@ -0,0 +1,95 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Devices in range ordered by their smoothed RSSI, strongest first. Updating a device takes
+ * O(log n), and the strongest k devices can be obtained in O(k) without sorting.
+ * <p>
+ * This class is not thread safe.
+ *
+ * @see ScanSettings.Builder#setTrackStrongestDevices(boolean)
+ */
+/* package */ class StrongestDevices {
+	private static final Comparator<Node> BY_SIGNAL_STRENGTH = (a, b) -> {
+		final int compare = Float.compare(b.rssi, a.rssi);
+		return compare != 0 ? compare : a.address.compareTo(b.address);
+	};
+
+	private final long deviceTimeoutNanos;
+
+	@NonNull private final TreeSet<Node> ordered = new TreeSet<>(BY_SIGNAL_STRENGTH);
+	/**
+	 * Nodes by device address. The map is in access-order, so the first entry is the device
+	 * seen least recently.
+	 */
+	@NonNull private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>(16, 0.75f, true);
+
+	StrongestDevices(final long deviceTimeoutNanos) {
+		this.deviceTimeoutNanos = deviceTimeoutNanos;
+	}
+
+	void update(@NonNull final ScanResult result) {
+		final String address = result.getDevice().getAddress();
+		Node node = nodes.get(address);
+		if (node == null) {
+			node = new Node(address);
+			nodes.put(address, node);
+		} else {
+			// The node has to be removed before its key changes.
+			ordered.remove(node);
+		}
+		node.rssi = result.getSmoothedRssi();
+		node.result = result;
+		ordered.add(node);
+
+		removeLostDevices(result.getTimestampNanos());
+	}
+
+	/**
+	 * Returns up to {@code count} devices with the strongest signal, strongest first.
+	 */
+	@NonNull
+	List<ScanResult> getStrongest(final int count, final long now) {
+		removeLostDevices(now);
+		final List<ScanResult> results = new ArrayList<>(Math.min(count, ordered.size()));
+		final Iterator<Node> iterator = ordered.iterator();
+		while (results.size() < count && iterator.hasNext())
+			results.add(iterator.next().result);
+		return results;
+	}
+
+	void clear() {
+		ordered.clear();
+		nodes.clear();
+	}
+
+	private void removeLostDevices(final long now) {
+		final Iterator<Node> iterator = nodes.values().iterator();
+		while (iterator.hasNext()) {
+			final Node eldest = iterator.next();
+			if (now - eldest.result.getTimestampNanos() <= deviceTimeoutNanos)
+				break;
+			ordered.remove(eldest);
+			iterator.remove();
+		}
+	}
+
+	private static final class Node {
+		@NonNull private final String address;
+		private float rssi;
+		@SuppressWarnings("NotNullFieldNotInitialized")
+		@NonNull private ScanResult result;
+
+		private Node(@NonNull final String address) {
+			this.address = address;
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Counts unique devices seen by all scans in the last minute, hour and day, using
+ * {@link HyperLogLog} sketches. Obtain the counter using
+ * {@link BluetoothLeScannerCompat#getUniqueDeviceCounter()}. Devices are counted from the
+ * moment the counter was first obtained.
+ * <p>
+ * Each window is split into {@link #BUCKETS_PER_WINDOW} buckets, each with its own sketch.
+ * The count for a window is estimated from the sketches of the buckets in the window,
+ * so the window slides by whole buckets, e.g. 5 seconds for {@link #WINDOW_MINUTE}.
+ */
+@SuppressWarnings({"WeakerAccess", "unused"})
+public final class UniqueDeviceCounter {
+	public static final int WINDOW_MINUTE = 0;
+	public static final int WINDOW_HOUR = 1;
+	public static final int WINDOW_DAY = 2;
+
+	/** The precision of sketches, giving about 1.6% standard error using 4 KB per sketch. */
+	public static final int PRECISION = 12;
+	public static final int BUCKETS_PER_WINDOW = 12;
+
+	private static final long[] WINDOW_NANOS = {
+			60 * 1000000000L,
+			60 * 60 * 1000000000L,
+			24 * 60 * 60 * 1000000000L
+	};
+
+	@NonNull private final Window[] windows = new Window[WINDOW_NANOS.length];
+
+	/* package */ UniqueDeviceCounter() {
+		for (int i = 0; i < windows.length; i++)
+			windows[i] = new Window(WINDOW_NANOS[i] / BUCKETS_PER_WINDOW);
+	}
+
+	/* package */ synchronized void add(final long address, final long timestampNanos) {
+		for (final Window window : windows)
+			window.add(address, timestampNanos);
+	}
+
+	/**
+	 * Returns the estimated number of unique devices seen in the given window.
+	 *
+	 * @param window one of {@link #WINDOW_MINUTE}, {@link #WINDOW_HOUR} or {@link #WINDOW_DAY}.
+	 */
+	public long getCount(final int window) {
+		return getSketch(window).estimate();
+	}
+
+	/**
+	 * Returns a sketch of devices seen in the given window. The sketch may be merged with
+	 * sketches from other devices to count unique devices seen by all of them.
+	 *
+	 * @param window one of {@link #WINDOW_MINUTE}, {@link #WINDOW_HOUR} or {@link #WINDOW_DAY}.
+	 * @throws IllegalArgumentException If the window is invalid.
+	 */
+	@NonNull
+	public synchronized HyperLogLog getSketch(final int window) {
+		if (window < WINDOW_MINUTE || window > WINDOW_DAY) {
+			throw new IllegalArgumentException("invalid window " + window);
+		}
+		return windows[window].merge(SystemClock.elapsedRealtimeNanos());
+	}
+
+	private static final class Window {
+		private final long bucketNanos;
+		@NonNull private final HyperLogLog[] sketches = new HyperLogLog[BUCKETS_PER_WINDOW];
+		/** Index of the bucket since boot held in each slot, or -1. */
+		@NonNull private final long[] bucketIds = new long[BUCKETS_PER_WINDOW];
+
+		private Window(final long bucketNanos) {
+			this.bucketNanos = bucketNanos;
+			for (int i = 0; i < BUCKETS_PER_WINDOW; i++)
+				bucketIds[i] = -1;
+		}
+
+		private void add(final long address, final long timestampNanos) {
+			final long bucketId = timestampNanos / bucketNanos;
+			final int slot = (int) (bucketId % BUCKETS_PER_WINDOW);
+			HyperLogLog sketch = sketches[slot];
+			if (bucketIds[slot] != bucketId) {
+				// Sketches are created only when needed and reused afterwards.
+				if (sketch == null)
+					sketch = sketches[slot] = new HyperLogLog(PRECISION);
+				else
+					sketch.clear();
+				bucketIds[slot] = bucketId;
+			}
+			//noinspection ConstantConditions
+			sketch.add(address);
+		}
+
+		@NonNull
+		private HyperLogLog merge(final long now) {
+			final long currentBucketId = now / bucketNanos;
+			final HyperLogLog result = new HyperLogLog(PRECISION);
+			for (int i = 0; i < BUCKETS_PER_WINDOW; i++) {
+				final HyperLogLog sketch = sketches[i];
+				if (sketch != null && bucketIds[i] > currentBucketId - BUCKETS_PER_WINDOW)
+					result.merge(sketch);
+			}
+			return result;
+		}
+	}
+}
@@ -43,6 +43,20 @@ import androidx.annotation.Nullable;
 			userCallback.onBatchScanResults(results);
 	}
 
+	@Override
+	public void onMatchesFound(@NonNull final List<ScanResult> results) {
+		final ScanCallback userCallback = weakScanCallback.get();
+		if (userCallback != null)
+			userCallback.onMatchesFound(results);
+	}
+
+	@Override
+	public void onMatchesLost(@NonNull final List<ScanResult> results) {
+		final ScanCallback userCallback = weakScanCallback.get();
+		if (userCallback != null)
+			userCallback.onMatchesLost(results);
+	}
+
 	@Override
 	public void onScanFailed(final int errorCode) {
 		final ScanCallback userCallback = weakScanCallback.get();
@@ -0,0 +1,185 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class ExecutorSchedulerTest {
+
+  private final ExecutorService pool = Executors.newFixedThreadPool(4);
+
+  @After public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test public void post_multiThreadExecutor_runInOrder() throws InterruptedException {
+    // Given
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(pool);
+    final List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+    final CountDownLatch done = new CountDownLatch(100);
+
+    // When
+    for (int i = 0; i < 100; i++) {
+      final int index = i;
+      scheduler.post(() -> {
+        order.add(index);
+        done.countDown();
+      });
+    }
+
+    // Then
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    for (int i = 0; i < 100; i++)
+      assertThat(order.get(i)).isEqualTo(i);
+  }
+
+  @Test public void post_multiThreadExecutor_tasksNeverOverlap() throws InterruptedException {
+    // Given
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(pool);
+    final AtomicInteger active = new AtomicInteger();
+    final AtomicInteger maxActive = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(50);
+
+    // When
+    for (int i = 0; i < 50; i++) {
+      scheduler.post(() -> {
+        maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+        Thread.yield();
+        active.decrementAndGet();
+        done.countDown();
+      });
+    }
+
+    // Then
+    assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(maxActive.get()).isEqualTo(1);
+  }
+
+  @Test public void post_fromRunningTask_runAfterCurrentTask() {
+    // Given
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(Runnable::run);
+    final List<String> events = new ArrayList<>();
+
+    // When
+    scheduler.post(() -> {
+      events.add("first started");
+      scheduler.post(() -> events.add("second"));
+      events.add("first finished");
+    });
+
+    // Then
+    assertThat(events).containsExactly("first started", "first finished", "second").inOrder();
+  }
+
+  @Test public void post_taskThrows_nextTaskRun() {
+    // Given
+    final ManualExecutor executor = new ManualExecutor();
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(executor);
+    final List<String> events = new ArrayList<>();
+
+    // When
+    scheduler.post(() -> {
+      throw new IllegalStateException();
+    });
+    scheduler.post(() -> events.add("second"));
+
+    // Then
+    assertThrows(IllegalStateException.class, executor::runNext);
+    executor.runAll();
+    assertThat(events).containsExactly("second");
+  }
+
+  @Test public void removeCallbacks_pendingTask_notRun() {
+    // Given
+    final ManualExecutor executor = new ManualExecutor();
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(executor);
+    final List<String> events = new ArrayList<>();
+    final Runnable removed = () -> events.add("removed");
+
+    // When
+    scheduler.post(removed);
+    scheduler.post(() -> events.add("kept"));
+    scheduler.post(removed);
+    scheduler.removeCallbacks(removed);
+    executor.runAll();
+
+    // Then
+    assertThat(events).containsExactly("kept");
+  }
+
+  @Test public void removeCallbacks_delayedTask_notRun() throws InterruptedException {
+    // Given
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(Runnable::run);
+    final AtomicInteger removedRuns = new AtomicInteger();
+    final Runnable removed = removedRuns::incrementAndGet;
+    final CountDownLatch kept = new CountDownLatch(1);
+
+    // When
+    scheduler.postDelayed(removed, 50);
+    scheduler.postDelayed(kept::countDown, 100);
+    scheduler.removeCallbacks(removed);
+
+    // Then
+    assertThat(kept.await(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(removedRuns.get()).isEqualTo(0);
+  }
+
+  @Test public void removeAll_pendingAndDelayedTasks_notRun() throws InterruptedException {
+    // Given
+    final ManualExecutor executor = new ManualExecutor();
+    final ScanCallbackScheduler scheduler = ScanCallbackScheduler.of(executor);
+    final AtomicInteger runs = new AtomicInteger();
+
+    // When
+    scheduler.post(runs::incrementAndGet);
+    scheduler.postDelayed(runs::incrementAndGet, 20);
+    scheduler.removeAll();
+    Thread.sleep(100);
+    executor.runAll();
+
+    // Then
+    assertThat(runs.get()).isEqualTo(0);
+  }
+
+  /**
+   * An executor that runs the tasks only when requested by the test.
+   */
+  private static final class ManualExecutor implements Executor {
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+    @Override public synchronized void execute(final Runnable task) {
+      tasks.offer(task);
+    }
+
+    void runNext() {
+      final Runnable task;
+      synchronized (this) {
+        task = tasks.poll();
+      }
+      if (task != null)
+        task.run();
+    }
+
+    void runAll() {
+      while (!isEmpty())
+        runNext();
+    }
+
+    private synchronized boolean isEmpty() {
+      return tasks.isEmpty();
+    }
+  }
+}
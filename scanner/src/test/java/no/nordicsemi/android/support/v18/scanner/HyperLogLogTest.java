@@ -0,0 +1,89 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+public class HyperLogLogTest {
+
+  @Test public void estimate_emptySketch_returnZero() {
+    // Given
+    final HyperLogLog sketch = new HyperLogLog(12);
+
+    // Then
+    assertThat(sketch.estimate()).isEqualTo(0);
+  }
+
+  @Test public void estimate_duplicates_countedOnce() {
+    // Given
+    final HyperLogLog sketch = new HyperLogLog(12);
+
+    // When
+    for (int i = 0; i < 10; i++) {
+      sketch.add(0x0123456789ABL);
+      sketch.add(0x0123456789ACL);
+    }
+
+    // Then
+    assertThat(sketch.estimate()).isEqualTo(2);
+  }
+
+  @Test public void estimate_manyDevices_withinError() {
+    // Given
+    final HyperLogLog sketch = new HyperLogLog(12);
+
+    // When
+    for (long address = 0; address < 50000; address++) {
+      sketch.add(address);
+    }
+
+    // Then: standard error is about 1.6%
+    assertThat((double) sketch.estimate()).isWithin(2500.0).of(50000.0);
+  }
+
+  @Test public void merge_overlappingSketches_returnUnion() {
+    // Given
+    final HyperLogLog first = new HyperLogLog(12);
+    final HyperLogLog second = new HyperLogLog(12);
+    for (long address = 0; address < 20000; address++) {
+      first.add(address);
+      second.add(address + 10000);
+    }
+
+    // When
+    first.merge(second);
+
+    // Then
+    assertThat((double) first.estimate()).isWithin(1500.0).of(30000.0);
+  }
+
+  @Test public void merge_differentPrecision_throwException() {
+    // Given
+    final HyperLogLog first = new HyperLogLog(12);
+    final HyperLogLog second = new HyperLogLog(10);
+
+    // Then
+    assertThrows(IllegalArgumentException.class, () -> first.merge(second));
+  }
+
+  @Test public void fromByteArray_serializedSketch_returnEqualEstimate() {
+    // Given
+    final HyperLogLog sketch = new HyperLogLog(10);
+    for (long address = 0; address < 1000; address++) {
+      sketch.add(address);
+    }
+
+    // When
+    final HyperLogLog copy = HyperLogLog.fromByteArray(sketch.toByteArray());
+
+    // Then
+    assertThat(copy.getPrecision()).isEqualTo(10);
+    assertThat(copy.estimate()).isEqualTo(sketch.estimate());
+  }
+
+  @Test public void fromByteArray_invalidBytes_throwException() {
+    assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromByteArray(new byte[] { 1, 12, 0 }));
+    assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromByteArray(new byte[] { 2, 12 }));
+  }
+}
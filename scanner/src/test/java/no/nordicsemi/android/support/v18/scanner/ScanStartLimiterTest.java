@@ -0,0 +1,92 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ScanStartLimiterTest {
+
+  @Test public void getDelay_noStarts_returnZero() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(true);
+
+    // Then
+    assertThat(limiter.getDelay(ScanStartLimiter.MAX_STARTS, 0)).isEqualTo(0);
+    assertThat(limiter.getAvailableStarts(0)).isEqualTo(ScanStartLimiter.MAX_STARTS);
+  }
+
+  @Test public void getDelay_partlyFull_delayOnlyStartsOverLimit() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(true);
+
+    // When
+    limiter.recordStart(0);
+    limiter.recordStart(1000);
+
+    // Then
+    assertThat(limiter.getDelay(3, 2000)).isEqualTo(0);
+    // The 4th start has to wait until the first one expires.
+    assertThat(limiter.getDelay(4, 2000)).isEqualTo(28000);
+    assertThat(limiter.getDelay(5, 2000)).isEqualTo(29000);
+    assertThat(limiter.getAvailableStarts(2000)).isEqualTo(3);
+  }
+
+  @Test public void getDelay_full_waitForOldestStarts() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(true);
+
+    // When
+    for (int i = 0; i < ScanStartLimiter.MAX_STARTS; i++)
+      limiter.recordStart(i * 1000);
+
+    // Then
+    assertThat(limiter.getAvailableStarts(5000)).isEqualTo(0);
+    assertThat(limiter.getDelay(1, 5000)).isEqualTo(25000);
+    assertThat(limiter.getDelay(2, 5000)).isEqualTo(26000);
+    // After the first start expired, one scan may be started.
+    assertThat(limiter.getAvailableStarts(30500)).isEqualTo(1);
+    assertThat(limiter.getDelay(1, 30500)).isEqualTo(0);
+    assertThat(limiter.getDelay(2, 30500)).isEqualTo(500);
+  }
+
+  @Test public void getDelay_wrapped_oldestStartsOverwritten() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(true);
+
+    // When
+    for (int i = 0; i < ScanStartLimiter.MAX_STARTS + 2; i++)
+      limiter.recordStart(i * 1000);
+
+    // Then
+    // The buffer contains starts at 2, 3, 4, 5 and 6 s.
+    assertThat(limiter.getDelay(1, 7000)).isEqualTo(25000);
+    assertThat(limiter.getDelay(3, 7000)).isEqualTo(27000);
+    assertThat(limiter.getDelay(5, 7000)).isEqualTo(29000);
+    assertThat(limiter.getAvailableStarts(33500)).isEqualTo(2);
+  }
+
+  @Test public void getDelay_numberOverLimit_cappedAtLimit() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(true);
+
+    // When
+    limiter.recordStart(0);
+
+    // Then
+    assertThat(limiter.getDelay(ScanStartLimiter.MAX_STARTS + 3, 1000))
+        .isEqualTo(limiter.getDelay(ScanStartLimiter.MAX_STARTS, 1000));
+  }
+
+  @Test public void getDelay_notEnforced_returnZero() {
+    // Given
+    final ScanStartLimiter limiter = new ScanStartLimiter(false);
+
+    // When
+    for (int i = 0; i < ScanStartLimiter.MAX_STARTS; i++)
+      limiter.recordStart(i);
+
+    // Then
+    assertThat(limiter.getDelay(1, 10)).isEqualTo(0);
+    assertThat(limiter.getAvailableStarts(10)).isEqualTo(ScanStartLimiter.MAX_STARTS);
+  }
+}
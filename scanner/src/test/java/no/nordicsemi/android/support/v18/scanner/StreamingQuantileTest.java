@@ -0,0 +1,67 @@
+package no.nordicsemi.android.support.v18.scanner;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class StreamingQuantileTest {
+
+  @Test public void getQuantile_noValues_returnNaN() {
+    // Given
+    final StreamingQuantile median = new StreamingQuantile(0.5);
+
+    // Then
+    assertThat(median.getQuantile()).isNaN();
+  }
+
+  @Test public void getQuantile_fewValues_returnExactQuantile() {
+    // Given
+    final StreamingQuantile median = new StreamingQuantile(0.5);
+
+    // When
+    median.add(30);
+    median.add(10);
+    median.add(20);
+
+    // Then
+    assertThat(median.getQuantile()).isEqualTo(20.0);
+  }
+
+  @Test public void getQuantile_uniformValues_returnApproximateQuantiles() {
+    // Given
+    final StreamingQuantile lowerQuartile = new StreamingQuantile(0.25);
+    final StreamingQuantile median = new StreamingQuantile(0.5);
+    final StreamingQuantile upperQuartile = new StreamingQuantile(0.75);
+    final Random random = new Random(42);
+
+    // When
+    for (int i = 0; i < 10000; i++) {
+      final double value = random.nextDouble() * 100;
+      lowerQuartile.add(value);
+      median.add(value);
+      upperQuartile.add(value);
+    }
+
+    // Then
+    assertThat(lowerQuartile.getQuantile()).isWithin(2.0).of(25.0);
+    assertThat(median.getQuantile()).isWithin(2.0).of(50.0);
+    assertThat(upperQuartile.getQuantile()).isWithin(2.0).of(75.0);
+  }
+
+  @Test public void getQuantile_intervalsWithLostPackets_returnRealInterval() {
+    // Given
+    final StreamingQuantile median = new StreamingQuantile(0.5);
+    final Random random = new Random(7);
+
+    // When: 100 ms interval with 10 ms jitter, every fifth packet lost
+    for (int i = 0; i < 1000; i++) {
+      final double interval = 100 + random.nextDouble() * 10;
+      median.add(i % 5 == 0 ? 2 * interval : interval);
+    }
+
+    // Then
+    assertThat(median.getQuantile()).isWithin(5.0).of(105.0);
+  }
+}